@@ -0,0 +1,104 @@
+package org.morpho.bench;
+
+import org.morpho.AVLNode;
+import org.morpho.AVLTree;
+import org.morpho.RootData;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link AVLTree} operations on a tree of 17 to 100k synthetic roots.
+ *
+ * The tree holds every other root of a lexicon twice its size; the rest
+ * are misses for search and fresh keys for insert. Insert and delete
+ * benchmarks undo themselves so the tree keeps its size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AVLTreeBenchmark {
+
+    @Param({"17", "1000", "100000"})
+    public int roots;
+
+    private String[] present;
+    private String[] absent;
+    private RootData[] presentData;
+    private RootData[] absentData;
+    private AVLTree tree;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<String> lexicon = SyntheticLexicon.roots(2 * roots, 42);
+        present = new String[roots];
+        absent = new String[roots];
+        presentData = new RootData[roots];
+        absentData = new RootData[roots];
+        for (int i = 0; i < roots; i++) {
+            present[i] = lexicon.get(2 * i);
+            absent[i] = lexicon.get(2 * i + 1);
+            presentData[i] = new RootData(present[i]);
+            absentData[i] = new RootData(absent[i]);
+        }
+        tree = new AVLTree();
+        tree.root = tree.build(List.of(presentData));
+    }
+
+    private int nextIndex() {
+        int i = next;
+        next = i + 1 == roots ? 0 : i + 1;
+        return i;
+    }
+
+    @Benchmark
+    public RootData searchHit() {
+        return tree.search(tree.root, present[nextIndex()]);
+    }
+
+    @Benchmark
+    public RootData searchMiss() {
+        return tree.search(tree.root, absent[nextIndex()]);
+    }
+
+    @Benchmark
+    public AVLNode insertThenDelete() {
+        int i = nextIndex();
+        tree.root = tree.insert(tree.root, absentData[i]);
+        tree.root = tree.delete(tree.root, absent[i]);
+        return tree.root;
+    }
+
+    @Benchmark
+    public AVLNode deleteThenReinsert() {
+        int i = nextIndex();
+        tree.root = tree.delete(tree.root, present[i]);
+        tree.root = tree.insert(tree.root, presentData[i]);
+        return tree.root;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void insertAll(Blackhole bh) {
+        AVLTree fresh = new AVLTree();
+        for (RootData data : presentData)
+            fresh.root = fresh.insert(fresh.root, data);
+        bh.consume(fresh.root);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void build(Blackhole bh) {
+        AVLTree fresh = new AVLTree();
+        fresh.root = fresh.build(List.of(presentData));
+        bh.consume(fresh.root);
+    }
+}
@@ -0,0 +1,120 @@
+package org.morpho.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Compares two JMH result files written with {@code -rf csv}, typically
+ * one from the main branch and one from a change:
+ * <pre>
+ *   java -cp target/benchmarks.jar org.morpho.bench.CompareResults base.csv new.csv [percent]
+ * </pre>
+ * Prints every benchmark and parameter set found in both with its change,
+ * counted so that positive is always faster (higher throughput, lower
+ * time). Exits with status 1 if any got slower by more than percent
+ * (default 10), so a build script can fail on it.
+ */
+public final class CompareResults {
+
+    private CompareResults() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: CompareResults <baseline.csv> <current.csv> [percent]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+        Map<String, Score> baseline = read(Path.of(args[0]));
+        Map<String, Score> current = read(Path.of(args[1]));
+
+        int regressions = 0;
+        for (Map.Entry<String, Score> e : current.entrySet()) {
+            Score before = baseline.get(e.getKey());
+            if (before == null)
+                continue;
+            Score after = e.getValue();
+            double change = after.higherIsBetter()
+                    ? (after.value - before.value) / before.value * 100
+                    : (before.value - after.value) / before.value * 100;
+            boolean regressed = change < -threshold;
+            if (regressed)
+                regressions++;
+            System.out.printf(Locale.ROOT, "%-70s %12.3f -> %12.3f %-8s %+7.1f%%%s%n",
+                    e.getKey(), before.value, after.value, after.unit, change, regressed ? "  REGRESSION" : "");
+        }
+        System.out.println(regressions + " regression(s) beyond " + threshold + "%");
+        System.exit(regressions == 0 ? 0 : 1);
+    }
+
+    /** Rows of a JMH CSV file keyed by benchmark, mode and parameters. */
+    private static Map<String, Score> read(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        Map<String, Score> scores = new LinkedHashMap<>();
+        if (lines.isEmpty())
+            return scores;
+        List<String> header = fields(lines.get(0));
+        int benchmark = header.indexOf("Benchmark");
+        int mode = header.indexOf("Mode");
+        int score = header.indexOf("Score");
+        int unit = header.indexOf("Unit");
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.isBlank())
+                continue;
+            List<String> row = fields(line);
+            StringBuilder key = new StringBuilder(row.get(benchmark)).append(' ').append(row.get(mode));
+            for (int i = 0; i < header.size(); i++) {
+                if (header.get(i).startsWith("Param: ") && i < row.size() && !row.get(i).isEmpty())
+                    key.append(' ').append(header.get(i).substring(7)).append('=').append(row.get(i));
+            }
+            double value = Double.parseDouble(row.get(score));
+            scores.put(key.toString(), new Score(value, row.get(unit), row.get(mode)));
+        }
+        return scores;
+    }
+
+    /** Fields of one CSV line; JMH quotes the text ones. */
+    private static List<String> fields(String line) {
+        List<String> out = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                out.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        out.add(field.toString());
+        return out;
+    }
+
+    private static final class Score {
+        final double value;
+        final String unit;
+        final String mode;
+
+        Score(double value, String unit, String mode) {
+            this.value = value;
+            this.unit = unit;
+            this.mode = mode;
+        }
+
+        /** Throughput is ops per time; every other mode is time per op. */
+        boolean higherIsBetter() {
+            return mode.equals("thrpt");
+        }
+    }
+}
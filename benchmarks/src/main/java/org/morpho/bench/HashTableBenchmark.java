@@ -0,0 +1,122 @@
+package org.morpho.bench;
+
+import org.morpho.HashTable;
+import org.morpho.Pattern;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup and insert throughput of the open-addressing {@link HashTable}
+ * against the old chained table, at 10, 1k and 100k patterns.
+ *
+ * The synthetic patterns have no radical slots, so the pattern automaton
+ * ignores them and both tables are measured on their own.
+ * Lookups go through updatePattern, the table's find-by-key path;
+ * getOpenAddressing measures the read-only get the engine itself uses.
+ * putAllOpenAddressing is the bulk build every file load goes through.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashTableBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int size;
+
+    private String[] keys;
+    private Pattern[] patterns;
+    private Map<String, Pattern> byKey;
+    private HashTable openTable;
+    private LegacyHashTable legacyTable;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        keys = new String[size];
+        patterns = new Pattern[size];
+        openTable = new HashTable();
+        legacyTable = new LegacyHashTable();
+        byKey = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            keys[i] = "p" + i;
+            patterns[i] = new Pattern(keys[i], List.of("م", "ك", "ت"));
+            openTable.insert(keys[i], patterns[i]);
+            legacyTable.insert(keys[i], patterns[i]);
+            byKey.put(keys[i], patterns[i]);
+        }
+    }
+
+    private int nextIndex() {
+        int i = next;
+        next = i + 1 == size ? 0 : i + 1;
+        return i;
+    }
+
+    @Benchmark
+    public boolean lookupOpenAddressing() {
+        int i = nextIndex();
+        return openTable.updatePattern(keys[i], patterns[i]);
+    }
+
+    @Benchmark
+    public Pattern getOpenAddressing() {
+        return openTable.get(keys[nextIndex()]);
+    }
+
+    @Benchmark
+    public boolean lookupLegacy() {
+        int i = nextIndex();
+        return legacyTable.updatePattern(keys[i], patterns[i]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void insertAllOpenAddressing(Blackhole bh) {
+        HashTable table = new HashTable();
+        for (int i = 0; i < size; i++)
+            table.insert(keys[i], patterns[i]);
+        bh.consume(table);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void putAllOpenAddressing(Blackhole bh) {
+        bh.consume(HashTable.of(byKey));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void insertAllLegacy(Blackhole bh) {
+        LegacyHashTable table = new LegacyHashTable();
+        for (int i = 0; i < size; i++)
+            table.insert(keys[i], patterns[i]);
+        bh.consume(table);
+    }
+
+    @Benchmark
+    public boolean deleteAndReinsertOpenAddressing() {
+        int i = nextIndex();
+        boolean removed = openTable.deletePattern(keys[i]);
+        openTable.insert(keys[i], patterns[i]);
+        return removed;
+    }
+
+    @Benchmark
+    public boolean deleteAndReinsertLegacy() {
+        int i = nextIndex();
+        boolean removed = legacyTable.deletePattern(keys[i]);
+        legacyTable.insert(keys[i], patterns[i]);
+        return removed;
+    }
+}
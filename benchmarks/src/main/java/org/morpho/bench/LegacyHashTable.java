@@ -0,0 +1,66 @@
+package org.morpho.bench;
+
+import org.morpho.Pattern;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The chained pattern table the engine used before open addressing:
+ * 23 fixed buckets of entry lists, never resized. Kept only as a
+ * baseline for {@link HashTableBenchmark}.
+ */
+public class LegacyHashTable {
+
+    private static class Entry {
+        String key;
+        Pattern value;
+
+        Entry(String k, Pattern v) {
+            key = k;
+            value = v;
+        }
+    }
+
+    private int size = 23;
+    private List<Entry>[] table;
+
+    // Generic arrays can't be created; the raw array is kept as the engine had it
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public LegacyHashTable() {
+        table = new ArrayList[size];
+        for (int i = 0; i < size; i++)
+            table[i] = new ArrayList<>();
+    }
+
+    private int hash(String key) {
+        return Math.abs(key.hashCode()) % size;
+    }
+
+    public boolean updatePattern(String key, Pattern newValue) {
+        int index = hash(key);
+        for (Entry e : table[index]) {
+            if (e.key.equals(key)) {
+                e.value = newValue;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean deletePattern(String key) {
+        int index = hash(key);
+        return table[index].removeIf(e -> e.key.equals(key));
+    }
+
+    public void insert(String key, Pattern value) {
+        int index = hash(key);
+        for (Entry e : table[index]) {
+            if (e.key.equals(key)) {
+                e.value = value;
+                return;
+            }
+        }
+        table[index].add(new Entry(key, value));
+    }
+}
@@ -0,0 +1,102 @@
+package org.morpho.bench;
+
+import org.morpho.Pattern;
+import org.morpho.level.Level;
+import org.morpho.level.LexiconRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Level} construction and enabled-pattern queries over synthetic
+ * roots.txt and patterns.txt files written once per trial.
+ *
+ * constructCold evicts both files from the {@link LexiconRegistry} first,
+ * so it measures parsing and building the stores; constructShared builds
+ * a further level over files already loaded, which is what every level
+ * after the first costs. getEnabledPatternsAfterEdit toggles a pattern
+ * before each query, so the cached views are rebuilt every time.
+ *
+ * Level prints a line per construction; stdout is muted during the trial.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LevelBenchmark {
+
+    @Param({"17", "1000", "100000"})
+    public int roots;
+
+    @Param({"11", "100", "1000"})
+    public int patterns;
+
+    private Path dir;
+    private String rootsPath;
+    private String patternsPath;
+    private Level level;
+    private String toggled;
+    private PrintStream stdout;
+
+    @Setup(org.openjdk.jmh.annotations.Level.Trial)
+    public void setUp() throws IOException {
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        dir = SyntheticLexicon.write(Files.createTempDirectory("morpho-bench"), roots, patterns, 42);
+        rootsPath = dir.resolve("roots.txt").toString();
+        patternsPath = dir.resolve("patterns.txt").toString();
+        level = new Level("bench", rootsPath, patternsPath);
+        List<Pattern> all = level.getAllPatterns();
+        toggled = all.get(all.size() / 2).name;
+    }
+
+    @TearDown(org.openjdk.jmh.annotations.Level.Trial)
+    public void tearDown() throws IOException {
+        LexiconRegistry.evict(rootsPath);
+        LexiconRegistry.evict(patternsPath);
+        SyntheticLexicon.delete(dir);
+        System.setOut(stdout);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Level constructCold() {
+        LexiconRegistry.evict(rootsPath);
+        LexiconRegistry.evict(patternsPath);
+        return new Level("cold", rootsPath, patternsPath);
+    }
+
+    @Benchmark
+    public Level constructShared() {
+        return new Level("shared", rootsPath, patternsPath);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public List<Pattern> getEnabledPatterns() {
+        return level.getEnabledPatterns();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public List<Pattern> getEnabledPatternsByArity() {
+        return level.getEnabledPatterns(3);
+    }
+
+    @Benchmark
+    public List<Pattern> getEnabledPatternsAfterEdit() {
+        if (level.isPatternEnabled(toggled))
+            level.disablePattern(toggled);
+        else
+            level.enablePattern(toggled);
+        return level.getEnabledPatterns();
+    }
+}
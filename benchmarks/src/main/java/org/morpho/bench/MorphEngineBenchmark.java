@@ -0,0 +1,141 @@
+package org.morpho.bench;
+
+import org.morpho.HashTable;
+import org.morpho.MorphEngine;
+import org.morpho.Pattern;
+import org.morpho.WeakRules;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generation and validation throughput over a {@link SyntheticLexicon}.
+ *
+ * Each call takes the next of a fixed ring of root/pattern pairs of
+ * matching arity. validateHit checks a word the pair derives,
+ * validateMiss the same word against another root of its length, and
+ * validateWrongLength a word longer than any pattern, which the index
+ * should turn away at once.
+ *
+ * rules is "none" for plain patterns or "shipped" for the shipped
+ * weak-root rules, under which weak roots take their rewritten forms and
+ * a failed plain match is retried against the patterns that have rules.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MorphEngineBenchmark {
+    private static final int PAIRS = 1024;
+
+    @Param({"17", "1000", "100000"})
+    public int roots;
+
+    @Param({"11", "100", "1000"})
+    public int patterns;
+
+    @Param({"none", "shipped"})
+    public String rules;
+
+    private HashTable table;
+    private String[] pairRoots;
+    private Pattern[] pairPatterns;
+    private String[] hits;
+    private String[] missRoots;
+    private String[] tooLong;
+    private char[] buffer;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        List<String> lexicon = SyntheticLexicon.roots(roots, 42);
+        WeakRules weakRules = rules.equals("shipped") ? SyntheticLexicon.shippedRules() : WeakRules.EMPTY;
+        List<Pattern> compiled = SyntheticLexicon.patterns(patterns, weakRules);
+        table = new HashTable();
+        Map<Integer, List<Pattern>> byArity = new HashMap<>();
+        for (Pattern p : compiled) {
+            table.insert(p.name, p);
+            byArity.computeIfAbsent(p.arity, k -> new ArrayList<>()).add(p);
+        }
+        Map<Integer, List<String>> rootsByLength = new HashMap<>();
+        for (String root : lexicon)
+            rootsByLength.computeIfAbsent(root.length(), k -> new ArrayList<>()).add(root);
+
+        pairRoots = new String[PAIRS];
+        pairPatterns = new Pattern[PAIRS];
+        hits = new String[PAIRS];
+        missRoots = new String[PAIRS];
+        tooLong = new String[PAIRS];
+        Random random = new Random(42);
+        int longest = 0;
+        for (Pattern p : compiled)
+            longest = Math.max(longest, p.length());
+        for (int i = 0; i < PAIRS; ) {
+            String root = lexicon.get(random.nextInt(lexicon.size()));
+            List<Pattern> fitting = byArity.get(root.length());
+            if (fitting == null)
+                continue;
+            Pattern p = fitting.get(random.nextInt(fitting.size()));
+            pairRoots[i] = root;
+            pairPatterns[i] = p;
+            hits[i] = MorphEngine.generateWord(root, p);
+            missRoots[i] = otherRoot(root, rootsByLength.get(root.length()), random);
+            tooLong[i] = hits[i] + "ظ".repeat(longest + 1 - hits[i].length());
+            i++;
+        }
+        buffer = new char[longest + 1];
+    }
+
+    /** A root of the same length as root that is not root; made up when the lexicon has none. */
+    private static String otherRoot(String root, List<String> sameLength, Random random) {
+        if (sameLength.size() > 1) {
+            String other;
+            do {
+                other = sameLength.get(random.nextInt(sameLength.size()));
+            } while (other.equals(root));
+            return other;
+        }
+        char first = root.charAt(0) == 'ب' ? 'ت' : 'ب';
+        return first + root.substring(1);
+    }
+
+    private int nextIndex() {
+        int i = next;
+        next = (i + 1) & (PAIRS - 1);
+        return i;
+    }
+
+    @Benchmark
+    public String generateWord() {
+        int i = nextIndex();
+        return MorphEngine.generateWord(pairRoots[i], pairPatterns[i]);
+    }
+
+    @Benchmark
+    public int generateWordIntoBuffer() {
+        int i = nextIndex();
+        return MorphEngine.generateWord(pairRoots[i], pairPatterns[i], buffer, 0);
+    }
+
+    @Benchmark
+    public String validateHit() {
+        int i = nextIndex();
+        return MorphEngine.validate(hits[i], pairRoots[i], table);
+    }
+
+    @Benchmark
+    public String validateMiss() {
+        int i = nextIndex();
+        return MorphEngine.validate(hits[i], missRoots[i], table);
+    }
+
+    @Benchmark
+    public String validateWrongLength() {
+        int i = nextIndex();
+        return MorphEngine.validate(tooLong[i], pairRoots[i], table);
+    }
+}
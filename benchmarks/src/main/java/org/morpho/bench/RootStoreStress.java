@@ -0,0 +1,191 @@
+package org.morpho.bench;
+
+import org.morpho.RootStore;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stress test of {@link RootStore} under many readers and concurrent
+ * writers, for the CAS retry loops that publish each new version.
+ * <pre>
+ *   java -cp target/benchmarks.jar org.morpho.bench.RootStoreStress [readers] [writers] [seconds]
+ * </pre>
+ * Defaults: 16 readers, 4 writers, 10 seconds. Exits with status 1 on any
+ * failure.
+ *
+ * The store starts with a base set of roots that nobody edits. Each writer
+ * owns its own keys, some with no packed code (they live in the tree
+ * beside the packed set), and adds and removes them at random while
+ * remembering what it did: half of them one at a time, the other half in
+ * pairs with one {@link RootStore#apply}. Readers meanwhile check that:
+ * <ul>
+ *   <li>{@link RootStore#list} and {@link RootStore#withPrefix} are in
+ *       strictly ascending order and hold every base root;</li>
+ *   <li>every base root is found by search;</li>
+ *   <li>each applied pair is seen whole or not at all.</li>
+ * </ul>
+ * After the writers stop, every writer key must be present exactly when
+ * its writer last added it, and the size must add up: no update is lost.
+ */
+public final class RootStoreStress {
+    private static final int BASE = 20_000;
+    private static final int KEYS_PER_WRITER = 2_000;
+    // Cannot be packed, so it sends a root to the tree beside the packed set
+    private static final char UNPACKED = 'x';
+
+    private RootStoreStress() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int readers = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int writers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        List<String> lexicon = SyntheticLexicon.roots(BASE + writers * KEYS_PER_WRITER, 7);
+        List<String> base = lexicon.subList(0, BASE);
+        String[][] keys = new String[writers][KEYS_PER_WRITER];
+        for (int w = 0; w < writers; w++) {
+            for (int k = 0; k < KEYS_PER_WRITER; k++) {
+                String root = lexicon.get(BASE + w * KEYS_PER_WRITER + k);
+                keys[w][k] = k % 10 == 0 ? root + UNPACKED : root;
+            }
+        }
+
+        RootStore store = new RootStore();
+        for (String root : base) {
+            store.add(root);
+        }
+
+        AtomicLong failures = new AtomicLong();
+        AtomicLong reads = new AtomicLong();
+        AtomicLong writes = new AtomicLong();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        ExecutorService pool = Executors.newFixedThreadPool(readers + writers);
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Future<boolean[]>> writerResults = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            String[] own = keys[w];
+            long seed = w;
+            writerResults.add(pool.submit(() -> write(store, own, seed, deadline, start, writes)));
+        }
+        List<Future<?>> readerResults = new ArrayList<>();
+        for (int r = 0; r < readers; r++) {
+            long seed = 1000 + r;
+            readerResults.add(pool.submit(() -> {
+                read(store, base, keys, seed, deadline, start, failures, reads);
+                return null;
+            }));
+        }
+        start.countDown();
+
+        int expectedSize = base.size();
+        for (int w = 0; w < writers; w++) {
+            boolean[] present = writerResults.get(w).get();
+            for (int k = 0; k < KEYS_PER_WRITER; k++) {
+                if (store.contains(keys[w][k]) != present[k]) {
+                    fail(failures, "lost update: " + keys[w][k] + " should be " + (present[k] ? "present" : "absent"));
+                }
+                if (present[k]) {
+                    expectedSize++;
+                }
+            }
+        }
+        for (Future<?> f : readerResults) {
+            f.get();
+        }
+        pool.shutdown();
+        if (store.size() != expectedSize || store.list().size() != expectedSize) {
+            fail(failures, "size " + store.size() + ", listed " + store.list().size() + ", expected " + expectedSize);
+        }
+        checkOrder(store.list(), failures, "final list");
+
+        System.out.printf(Locale.ROOT, "%d readers, %d writers, %d s: %,d reads, %,d writes, %d failures%n",
+                readers, writers, seconds, reads.get(), writes.get(), failures.get());
+        System.exit(failures.get() == 0 ? 0 : 1);
+    }
+
+    /**
+     * Random edits of own keys until the deadline; returns which are left present.
+     * The first half of the keys only change in pairs (2i, 2i+1) through
+     * apply, the second half one at a time through add and remove.
+     */
+    private static boolean[] write(RootStore store, String[] own, long seed, long deadline, CountDownLatch start,
+                                   AtomicLong writes) throws InterruptedException {
+        SplittableRandom random = new SplittableRandom(seed);
+        boolean[] present = new boolean[own.length];
+        int half = own.length / 2;
+        start.await();
+        for (long step = 0; System.nanoTime() < deadline; step++) {
+            if (step % 2 == 0) {
+                int pair = random.nextInt(half) & ~1;
+                List<String> both = List.of(own[pair], own[pair + 1]);
+                if (present[pair]) {
+                    store.apply(List.of(), both);
+                } else {
+                    store.apply(both, List.of());
+                }
+                present[pair] = !present[pair];
+                present[pair + 1] = present[pair];
+            } else {
+                int k = half + random.nextInt(own.length - half);
+                if (present[k]) {
+                    store.remove(own[k]);
+                } else {
+                    store.add(own[k]);
+                }
+                present[k] = !present[k];
+            }
+            writes.incrementAndGet();
+        }
+        return present;
+    }
+
+    private static void read(RootStore store, List<String> base, String[][] keys, long seed, long deadline,
+                             CountDownLatch start, AtomicLong failures, AtomicLong reads) throws InterruptedException {
+        SplittableRandom random = new SplittableRandom(seed);
+        start.await();
+        while (System.nanoTime() < deadline && failures.get() < 100) {
+            String root = base.get(random.nextInt(base.size()));
+            if (store.search(root) == null) {
+                fail(failures, "base root not found: " + root);
+            }
+
+            String[] own = keys[random.nextInt(keys.length)];
+            int pair = random.nextInt(own.length / 2) & ~1;
+            List<String> prefixed = store.withPrefix(own[pair].substring(0, 2));
+            checkOrder(prefixed, failures, "withPrefix");
+
+            if (random.nextInt(64) == 0) {
+                List<String> all = store.list();
+                checkOrder(all, failures, "list");
+                Set<String> listed = new HashSet<>(all);
+                if (!listed.containsAll(base)) {
+                    fail(failures, "list lost a base root");
+                }
+                // A pair applied in one step is seen whole in one listing
+                if (listed.contains(own[pair]) != listed.contains(own[pair + 1])) {
+                    fail(failures, "half an apply seen: " + own[pair] + ", " + own[pair + 1]);
+                }
+            }
+            reads.incrementAndGet();
+        }
+    }
+
+    private static void checkOrder(List<String> roots, AtomicLong failures, String what) {
+        for (int i = 1; i < roots.size(); i++) {
+            if (roots.get(i - 1).compareTo(roots.get(i)) >= 0) {
+                fail(failures, what + " out of order at " + i + ": " + roots.get(i - 1) + " >= " + roots.get(i));
+                return;
+            }
+        }
+    }
+
+    private static void fail(AtomicLong failures, String message) {
+        if (failures.incrementAndGet() <= 20) {
+            System.err.println("✗ " + message);
+        }
+    }
+}
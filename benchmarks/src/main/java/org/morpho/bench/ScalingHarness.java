@@ -0,0 +1,256 @@
+package org.morpho.bench;
+
+import org.morpho.level.LevelManager;
+import org.morpho.level.LexiconRegistry;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.regex.Matcher;
+
+/**
+ * End-to-end load time and heap footprint at growing lexicon sizes.
+ *
+ * For each root count it writes synthetic roots.txt and patterns.txt
+ * ({@link SyntheticLexicon}), then, with the registry empty, measures:
+ * <ul>
+ *   <li>startup: wall-clock time of the first {@link LevelManager#addLevel},
+ *       which parses both files and builds the level;</li>
+ *   <li>a second level over the same files, which only reuses them;</li>
+ *   <li>peak heap during startup: the sum of the heap pools' peaks, an
+ *       upper bound since pools peak at different times;</li>
+ *   <li>retained heap once both levels are built, from MemoryMXBean after
+ *       a GC and from the live-object heap histogram;</li>
+ *   <li>bytes per root and per pattern: the histogram growth from loading
+ *       each file alone through {@link LexiconRegistry}.</li>
+ * </ul>
+ * One row per size goes to the results CSV. A second CSV lists, per
+ * size, the classes that grew most while loading, to tell what a
+ * regression is made of.
+ * <pre>
+ *   java -XX:MarkSweepDeadRatio=0 -cp target/benchmarks.jar org.morpho.bench.ScalingHarness \
+ *       [results.csv] [roots,...] [patterns]
+ * </pre>
+ * Defaults: scaling.csv, 1000,10000,100000,1000000 roots, 100 patterns.
+ * Each size runs once in this JVM, after an unrecorded pass at the
+ * smallest one that loads the classes; run it alone on a quiet machine.
+ *
+ * Without MarkSweepDeadRatio=0 a full GC may leave dead objects in place
+ * as filler int[]s, which the histogram counts as live: then sizes are
+ * off by up to a few megabytes.
+ */
+public final class ScalingHarness {
+    private static final int TOP_CLASSES = 15;
+    private static final java.util.regex.Pattern HISTOGRAM_LINE =
+            java.util.regex.Pattern.compile("^\\s*\\d+:\\s+(\\d+)\\s+(\\d+)\\s+(\\S+)");
+    private static final java.util.regex.Pattern HISTOGRAM_TOTAL =
+            java.util.regex.Pattern.compile("(?m)^Total\\s+(\\d+)\\s+(\\d+)");
+
+    private ScalingHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path out = Path.of(args.length > 0 ? args[0] : "scaling.csv");
+        int[] sizes = Arrays.stream((args.length > 1 ? args[1] : "1000,10000,100000,1000000").split(","))
+                .mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+        int patterns = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        Path histogramOut = out.resolveSibling(out.getFileName().toString().replaceFirst("(\\.csv)?$", "-histogram.csv"));
+
+        PrintStream stdout = System.out;
+        if (!"0".equals(vmOption("MarkSweepDeadRatio"))) {
+            System.err.println("⚠ Run with -XX:MarkSweepDeadRatio=0, or heap sizes include dead objects");
+        }
+        measureQuietly(Arrays.stream(sizes).min().orElse(1000), patterns);
+        try (PrintWriter results = new PrintWriter(Files.newBufferedWriter(out, StandardCharsets.UTF_8));
+             PrintWriter classes = new PrintWriter(Files.newBufferedWriter(histogramOut, StandardCharsets.UTF_8))) {
+            results.println("roots,patterns,startup_ms,second_level_ms,peak_heap_bytes,retained_heap_bytes,"
+                    + "histogram_retained_bytes,bytes_per_root,bytes_per_pattern");
+            classes.println("roots,class,instances,bytes");
+            for (int roots : sizes) {
+                stdout.println("… " + roots + " roots, " + patterns + " patterns");
+                Row row = measureQuietly(roots, patterns);
+                results.println(row.csv());
+                results.flush();
+                for (Map.Entry<String, long[]> e : row.topClasses) {
+                    classes.println(roots + "," + e.getKey() + "," + e.getValue()[0] + "," + e.getValue()[1]);
+                }
+                classes.flush();
+                stdout.println("  " + row.csv());
+            }
+        }
+        stdout.println("✓ Results: " + out + ", " + histogramOut);
+    }
+
+    /** {@link #measure} on fresh files, with the levels' console output muted. */
+    private static Row measureQuietly(int roots, int patterns) throws IOException, JMException {
+        PrintStream stdout = System.out;
+        Path dir = SyntheticLexicon.write(Files.createTempDirectory("morpho-scaling"), roots, patterns, 42);
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            return measure(dir, roots, patterns);
+        } finally {
+            System.setOut(stdout);
+            SyntheticLexicon.delete(dir);
+        }
+    }
+
+    private static Row measure(Path dir, int roots, int patterns) throws IOException, JMException {
+        String rootsPath = dir.resolve("roots.txt").toString();
+        String patternsPath = dir.resolve("patterns.txt").toString();
+        Row row = new Row(roots, patterns);
+
+        // Each file alone through the registry, for the per-item costs
+        long before = liveBytes();
+        LexiconRegistry.roots(rootsPath);
+        long afterRoots = liveBytes();
+        LexiconRegistry.patterns(patternsPath);
+        long afterPatterns = liveBytes();
+        row.bytesPerRoot = (double) (afterRoots - before) / roots;
+        row.bytesPerPattern = (double) (afterPatterns - afterRoots) / patterns;
+        LexiconRegistry.evict(rootsPath);
+        LexiconRegistry.evict(patternsPath);
+
+        // The real startup path, from an empty registry. The first
+        // histogram waits in a file so that it is not counted in the second.
+        Path beforeFile = Files.createTempFile("morpho-histogram", ".txt");
+        Files.writeString(beforeFile, histogramText(), StandardCharsets.UTF_8);
+        long usedBefore = usedAfterGc();
+        List<MemoryPoolMXBean> heapPools = heapPools();
+        for (MemoryPoolMXBean pool : heapPools) {
+            pool.resetPeakUsage();
+        }
+        LevelManager manager = new LevelManager();
+        long t0 = System.nanoTime();
+        manager.addLevel("first", rootsPath, patternsPath);
+        long t1 = System.nanoTime();
+        for (MemoryPoolMXBean pool : heapPools) {
+            row.peakHeap += pool.getPeakUsage().getUsed();
+        }
+        manager.addLevel("second", rootsPath, patternsPath);
+        long t2 = System.nanoTime();
+        row.startupMillis = (t1 - t0) / 1e6;
+        row.secondLevelMillis = (t2 - t1) / 1e6;
+
+        row.retainedHeap = usedAfterGc() - usedBefore;
+        String afterText = histogramText();
+        String beforeText = Files.readString(beforeFile, StandardCharsets.UTF_8);
+        Files.delete(beforeFile);
+        row.histogramRetained = total(afterText) - total(beforeText);
+        row.topClasses = growth(parse(beforeText), parse(afterText));
+
+        manager.removeLevel("first");
+        manager.removeLevel("second");
+        LexiconRegistry.evict(rootsPath);
+        LexiconRegistry.evict(patternsPath);
+        return row;
+    }
+
+    private static String vmOption(String name) {
+        try {
+            return ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class).getVMOption(name).getValue();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        List<MemoryPoolMXBean> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pools.add(pool);
+            }
+        }
+        return pools;
+    }
+
+    private static long usedAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Live-object heap histogram, as printed by jcmd GC.class_histogram;
+     * taking it runs a full GC.
+     */
+    private static String histogramText() throws JMException {
+        return (String) ManagementFactory.getPlatformMBeanServer().invoke(
+                new ObjectName("com.sun.management:type=DiagnosticCommand"), "gcClassHistogram",
+                new Object[] {new String[0]}, new String[] {String[].class.getName()});
+    }
+
+    /** Bytes of live objects now; the histogram is dropped first, so it does not count itself. */
+    private static long liveBytes() throws JMException {
+        return total(histogramText());
+    }
+
+    private static long total(String histogram) {
+        Matcher m = HISTOGRAM_TOTAL.matcher(histogram);
+        if (!m.find()) {
+            throw new IllegalStateException("No total in heap histogram");
+        }
+        return Long.parseLong(m.group(2));
+    }
+
+    /** Classes of a histogram as {instances, bytes}. */
+    private static Map<String, long[]> parse(String histogram) {
+        Map<String, long[]> classes = new HashMap<>();
+        for (String line : histogram.split("\n")) {
+            Matcher m = HISTOGRAM_LINE.matcher(line);
+            if (m.find()) {
+                classes.merge(m.group(3), new long[] {Long.parseLong(m.group(1)), Long.parseLong(m.group(2))},
+                        (a, b) -> new long[] {a[0] + b[0], a[1] + b[1]});
+            }
+        }
+        return classes;
+    }
+
+    /** The classes whose live bytes grew most from before to after. */
+    private static List<Map.Entry<String, long[]>> growth(Map<String, long[]> before, Map<String, long[]> after) {
+        List<Map.Entry<String, long[]>> grown = new ArrayList<>();
+        for (Map.Entry<String, long[]> e : after.entrySet()) {
+            long[] old = before.getOrDefault(e.getKey(), new long[2]);
+            long[] delta = {e.getValue()[0] - old[0], e.getValue()[1] - old[1]};
+            if (delta[1] > 0) {
+                grown.add(Map.entry(e.getKey(), delta));
+            }
+        }
+        grown.sort((a, b) -> Long.compare(b.getValue()[1], a.getValue()[1]));
+        return grown.subList(0, Math.min(TOP_CLASSES, grown.size()));
+    }
+
+    private static final class Row {
+        final int roots;
+        final int patterns;
+        double startupMillis;
+        double secondLevelMillis;
+        long peakHeap;
+        long retainedHeap;
+        long histogramRetained;
+        double bytesPerRoot;
+        double bytesPerPattern;
+        List<Map.Entry<String, long[]>> topClasses;
+
+        Row(int roots, int patterns) {
+            this.roots = roots;
+            this.patterns = patterns;
+        }
+
+        String csv() {
+            return String.format(Locale.ROOT, "%d,%d,%.1f,%.3f,%d,%d,%d,%.1f,%.1f", roots, patterns, startupMillis,
+                    secondLevelMillis, peakHeap, retainedHeap, histogramRetained, bytesPerRoot, bytesPerPattern);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package org.morpho.bench;
+
+import org.morpho.Pattern;
+import org.morpho.WeakRules;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Deterministic lexicons of any size for the benchmarks.
+ *
+ * Roots are distinct strings over the 28 letters of the alphabet: mostly
+ * trilateral, a fifth quadrilateral, and five-letter roots only once the
+ * shorter ones run out (there are 21,952 trilaterals and 614,656
+ * quadrilaterals). The k-th root of a length is index k times a constant
+ * prime to the number of roots of that length, so they are distinct
+ * without a set and spread over the alphabet instead of counting up.
+ *
+ * Patterns start with the shipped ones and go on with affixed copies of
+ * them (مفاعلة, استفعلات, ...), so a small count is the real lexicon and
+ * 1000 keep the same mix of arities. No affix holds ف, ع or ل, which a
+ * template would read as radical slots.
+ * {@link #shippedRules} gives the shipped weak-root rules, which apply to
+ * the unaffixed patterns.
+ *
+ * The same count and seed always give the same lexicon, so runs of two
+ * builds measure the same data.
+ */
+public final class SyntheticLexicon {
+    private static final String LETTERS = "ابتثجحخدذرزسشصضطظعغفقكلمنهوي";
+    private static final long SCRAMBLE = 7_919;
+
+    // The shipped patterns.txt, in file order
+    private static final String[][] BASE = {
+            {"فاعل", "ف ا ع ل"},
+            {"مفعول", "م ف ع و ل"},
+            {"فعّال", "ف ع ع ا ل"},
+            {"تفعيل", "ت ف ع ي ل"},
+            {"افتعل", "ا ف ت ع ل"},
+            {"مفعل", "م ف ع ل"},
+            {"فعالة", "ف ع ا ل ة"},
+            {"فعل", "ف ع ل"},
+            {"فعلل", "ف ع ل ل"},
+            {"إفعلل", "إ ف ع ل ل"},
+            {"تفعلل", "ت ف ع ل ل"},
+            {"إفعنلل", "إ ف ع ن ل ل"},
+    };
+    private static final String[] PREFIXES = {"", "م", "ت", "است", "ان", "ي", "ن", "أ", "مت", "س", "يست"};
+    private static final String[] SUFFIXES = {"", "ة", "ات", "ون", "ين", "ان", "ي", "ها", "هم", "وا", "تان"};
+
+    // The shipped rules.txt, without its comments
+    private static final String[] RULES = {
+            "فاعل ع=وي ل=وي : ف ا ع ي",
+            "فعل ع=وي ل=وي : ف ع ى",
+            "افتعل ع=وي ل=وي : ا ف ت ع ى",
+            "مفعل ع=وي ل=وي : م ف ع ى",
+            "فاعل ع=وي : ف ا ئ ل",
+            "مفعول ع=وي : م ف ع ل",
+            "فعل ع=وي : ف ا ل",
+            "افتعل ع=وي : ا ف ت ا ل",
+            "مفعل ع=و : م ف ا ل",
+            "فاعل ل=و : ف ا ع ي",
+            "فعل ل=ي : ف ع ى",
+            "فعل ل=و : ف ع ا",
+            "مفعول ل=ي : م ف ع ي",
+            "مفعل ل=وي : م ف ع ى",
+            "افتعل ف=و : ا ت ت ع ل",
+            "فعل ع==ل : ف ع ّ",
+            "فاعل ع==ل : ف ا ع ّ",
+            "افتعل ع==ل : ا ف ت ع ّ"
+    };
+
+    private SyntheticLexicon() {
+    }
+
+    /** count distinct roots, in no particular order. */
+    public static List<String> roots(int count, long seed) {
+        long tri = pow(LETTERS.length(), 3);
+        long quad = pow(LETTERS.length(), 4);
+        int three = (int) Math.min(count - count / 5, tri);
+        int four = (int) Math.min(count - three, quad);
+        int five = count - three - four;
+
+        List<String> roots = new ArrayList<>(count);
+        addRoots(roots, 3, three, seed);
+        addRoots(roots, 4, four, seed);
+        addRoots(roots, 5, five, seed);
+        Collections.shuffle(roots, new Random(seed));
+        return roots;
+    }
+
+    private static void addRoots(List<String> out, int length, int count, long seed) {
+        long space = pow(LETTERS.length(), length);
+        long offset = Math.floorMod(seed, space);
+        char[] letters = new char[length];
+        for (long k = 0; k < count; k++) {
+            long index = Math.floorMod(k * SCRAMBLE + offset, space);
+            for (int i = length - 1; i >= 0; i--) {
+                letters[i] = LETTERS.charAt((int) (index % LETTERS.length()));
+                index /= LETTERS.length();
+            }
+            out.add(new String(letters));
+        }
+    }
+
+    private static long pow(int base, int exponent) {
+        long result = 1;
+        for (int i = 0; i < exponent; i++)
+            result *= base;
+        return result;
+    }
+
+    /**
+     * count distinct patterns as name -> template cells, in order; the
+     * first ones are the shipped patterns.
+     */
+    public static Map<String, List<String>> templates(int count) {
+        Map<String, List<String>> out = new LinkedHashMap<>();
+        for (int affix = 0; out.size() < count; affix++) {
+            if (affix >= PREFIXES.length * SUFFIXES.length)
+                throw new IllegalArgumentException("At most " + out.size() + " synthetic patterns");
+            String prefix = PREFIXES[affix % PREFIXES.length];
+            String suffix = SUFFIXES[affix / PREFIXES.length];
+            for (int b = 0; b < BASE.length && out.size() < count; b++) {
+                List<String> cells = new ArrayList<>();
+                addLetters(cells, prefix);
+                cells.addAll(Arrays.asList(BASE[b][1].split(" ")));
+                addLetters(cells, suffix);
+                out.putIfAbsent(prefix + BASE[b][0] + suffix, cells);
+            }
+        }
+        return out;
+    }
+
+    private static void addLetters(List<String> cells, String letters) {
+        for (int i = 0; i < letters.length(); i++)
+            cells.add(String.valueOf(letters.charAt(i)));
+    }
+
+    /** {@link #templates} compiled with rules. */
+    public static List<Pattern> patterns(int count, WeakRules rules) {
+        List<Pattern> out = new ArrayList<>(count);
+        for (Map.Entry<String, List<String>> e : templates(count).entrySet())
+            out.add(new Pattern(e.getKey(), e.getValue(), rules));
+        return out;
+    }
+
+    /** The shipped weak-root rules, read back from a temporary rules.txt. */
+    public static WeakRules shippedRules() throws IOException {
+        Path file = Files.createTempFile("morpho-rules", ".txt");
+        try {
+            Files.write(file, Arrays.asList(RULES), StandardCharsets.UTF_8);
+            return WeakRules.load(file.toFile());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Writes roots.txt and patterns.txt in the shipped format into dir,
+     * creating it, and returns dir. No rules.txt is written.
+     */
+    public static Path write(Path dir, int rootCount, int patternCount, long seed) throws IOException {
+        Files.createDirectories(dir);
+        try (BufferedWriter w = Files.newBufferedWriter(dir.resolve("roots.txt"), StandardCharsets.UTF_8)) {
+            for (String root : roots(rootCount, seed)) {
+                w.write(root);
+                w.newLine();
+            }
+        }
+        try (BufferedWriter w = Files.newBufferedWriter(dir.resolve("patterns.txt"), StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, List<String>> e : templates(patternCount).entrySet()) {
+                w.write(e.getKey() + ":" + String.join(" ", e.getValue()));
+                w.newLine();
+            }
+        }
+        return dir;
+    }
+
+    /** Deletes a directory made by {@link #write} and everything in it. */
+    public static void delete(Path dir) throws IOException {
+        if (!Files.exists(dir))
+            return;
+        try (var paths = Files.walk(dir)) {
+            for (Path p : paths.sorted(Comparator.reverseOrder()).toList())
+                Files.delete(p);
+        }
+    }
+}
@@ -4,10 +4,15 @@ public class AVLNode {
     public RootData data;
     public AVLNode left;
     public AVLNode right;
+    // Cached so balancing never walks a subtree
+    public int height;
+    public int size;
 
     public AVLNode(RootData data) {
         this.data = data;
         this.left = null;
         this.right = null;
+        this.height = 1;
+        this.size = 1;
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,13 @@
 package org.morpho;
 
+import java.util.ArrayList;
+import java.util.List;
+
+/** Roots ordered by {@link RootData#normalized}; search and delete take a normal form. */
 public class AVLTree {
+    // An AVL tree of height 64 would need more than 2^44 nodes
+    private static final int MAX_HEIGHT = 64;
+
     public AVLNode root;
 
     public AVLTree() {
@@ -8,23 +15,52 @@ public class AVLTree {
     }
 
     public AVLNode insert(AVLNode node, RootData data) {
-        if (node == null) {
-            return new AVLNode(data);
-        }
+        AVLNode[] path = new AVLNode[MAX_HEIGHT];
+        long wentLeft = 0;
+        int depth = 0;
 
-        if (data.root.compareTo(node.data.root) < 0) {
-            node.left = insert(node.left, data);
-        } else {
-            node.right = insert(node.right, data);
+        AVLNode current = node;
+        while (current != null) {
+            path[depth] = current;
+            if (data.normalized.compareTo(current.data.normalized) < 0) {
+                wentLeft |= 1L << depth;
+                current = current.left;
+            } else {
+                current = current.right;
+            }
+            depth++;
         }
 
-        return balance(node);
+        return rebalancePath(path, wentLeft, depth, new AVLNode(data));
+    }
+
+    /**
+     * Re-links child under path[depth - 1] and rebalances every node on the
+     * path back up to the root, which is returned.
+     */
+    private AVLNode rebalancePath(AVLNode[] path, long wentLeft, int depth, AVLNode child) {
+        for (int d = depth - 1; d >= 0; d--) {
+            AVLNode parent = path[d];
+            if ((wentLeft & (1L << d)) != 0)
+                parent.left = child;
+            else
+                parent.right = child;
+            child = balance(parent);
+        }
+        return child;
     }
 
     private int height(AVLNode node) {
-        if (node == null)
-            return 0;
-        return 1 + Math.max(height(node.left), height(node.right));
+        return node == null ? 0 : node.height;
+    }
+
+    private int size(AVLNode node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private void update(AVLNode node) {
+        node.height = 1 + Math.max(height(node.left), height(node.right));
+        node.size = 1 + size(node.left) + size(node.right);
     }
 
     private int getBalance(AVLNode node) {
@@ -35,6 +71,7 @@ public class AVLTree {
 
 
     private AVLNode balance(AVLNode node) {
+        update(node);
         int balance = getBalance(node);
 
         // Left heavy
@@ -64,6 +101,8 @@ public class AVLTree {
         y.left = z;
         z.right = t2;
 
+        update(z);
+        update(y);
         return y;
     }
 
@@ -74,51 +113,103 @@ public class AVLTree {
         y.right = z;
         z.left = t3;
 
+        update(z);
+        update(y);
         return y;
     }
 
     public RootData search(AVLNode node, String rootValue) {
-        if (node == null)
-            return null;
-
-        if (rootValue.equals(node.data.root))
-            return node.data;
-
-        if (rootValue.compareTo(node.data.root) < 0)
-            return search(node.left, rootValue);
-
-        return search(node.right, rootValue);
+        while (node != null) {
+            int cmp = rootValue.compareTo(node.data.normalized);
+            if (cmp == 0)
+                return node.data;
+            node = cmp < 0 ? node.left : node.right;
+        }
+        return null;
     }
 
     public AVLNode delete(AVLNode node, String rootValue) {
-        if (node == null)
-            return null;
-
-        if (rootValue.compareTo(node.data.root) < 0) {
-            node.left = delete(node.left, rootValue);
-        }
-        else if (rootValue.compareTo(node.data.root) > 0) {
-            node.right = delete(node.right, rootValue);
+        AVLNode[] path = new AVLNode[MAX_HEIGHT];
+        long wentLeft = 0;
+        int depth = 0;
+
+        AVLNode target = node;
+        while (target != null) {
+            int cmp = rootValue.compareTo(target.data.normalized);
+            if (cmp == 0)
+                break;
+            path[depth] = target;
+            if (cmp < 0) {
+                wentLeft |= 1L << depth;
+                target = target.left;
+            } else {
+                target = target.right;
+            }
+            depth++;
         }
-        else {
-            if (node.left == null)
-                return node.right;
-            else if (node.right == null)
-                return node.left;
-
-            AVLNode successor = minValueNode(node.right);
-            node.data = successor.data;
-            node.right = delete(node.right, successor.data.root);
+
+        if (target == null)
+            return node;
+
+        AVLNode replacement;
+        if (target.left == null) {
+            replacement = target.right;
+        } else if (target.right == null) {
+            replacement = target.left;
+        } else {
+            // Pull the in-order successor's data up, then unlink the successor
+            path[depth++] = target;
+            AVLNode successor = target.right;
+            while (successor.left != null) {
+                path[depth] = successor;
+                wentLeft |= 1L << depth;
+                successor = successor.left;
+                depth++;
+            }
+            target.data = successor.data;
+            replacement = successor.right;
         }
 
-        return balance(node);
+        return rebalancePath(path, wentLeft, depth, replacement);
     }
 
-    private AVLNode minValueNode(AVLNode node) {
-        AVLNode current = node;
-        while (current.left != null)
-            current = current.left;
-        return current;
+    /**
+     * Builds a perfectly balanced tree from roots already sorted by normal
+     * form and free of duplicates, in linear time.
+     */
+    public AVLNode buildFromSorted(List<RootData> sorted) {
+        return build(sorted, 0, sorted.size() - 1);
+    }
+
+    private AVLNode build(List<RootData> sorted, int lo, int hi) {
+        if (lo > hi)
+            return null;
+        int mid = (lo + hi) >>> 1;
+        AVLNode node = new AVLNode(sorted.get(mid));
+        node.left = build(sorted, lo, mid - 1);
+        node.right = build(sorted, mid + 1, hi);
+        update(node);
+        return node;
+    }
+
+    /**
+     * Bulk-loads roots in any order: sorts them only if needed, drops
+     * duplicates, then builds a balanced tree in linear time.
+     */
+    public AVLNode build(List<RootData> roots) {
+        List<RootData> sorted = new ArrayList<>(roots);
+        boolean inOrder = true;
+        for (int i = 1; i < sorted.size() && inOrder; i++)
+            inOrder = sorted.get(i - 1).normalized.compareTo(sorted.get(i).normalized) <= 0;
+        if (!inOrder)
+            sorted.sort((a, b) -> a.normalized.compareTo(b.normalized));
+
+        int unique = 0;
+        for (RootData d : sorted) {
+            if (unique == 0 || !sorted.get(unique - 1).normalized.equals(d.normalized))
+                sorted.set(unique++, d);
+        }
+        return buildFromSorted(sorted.subList(0, unique));
     }
 
     public void display(AVLNode node) {
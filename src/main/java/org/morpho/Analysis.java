@@ -0,0 +1,23 @@
+package org.morpho;
+
+/**
+ * One way a surface word can be derived: a candidate root and the pattern
+ * that produces the word from it.
+ */
+public class Analysis {
+    public String root;
+    public Pattern pattern;
+    // True when the root exists in the root store
+    public boolean attested;
+
+    public Analysis(String root, Pattern pattern, boolean attested) {
+        this.root = root;
+        this.pattern = pattern;
+        this.attested = attested;
+    }
+
+    @Override
+    public String toString() {
+        return root + " + " + pattern.name + (attested ? "" : " (non attestée)");
+    }
+}
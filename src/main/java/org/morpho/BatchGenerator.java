@@ -0,0 +1,332 @@
+package org.morpho;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Stream;
+
+/**
+ * Generates every (root, pattern) derivation of a root set in parallel.
+ *
+ * The roots are split recursively on a fork/join pool. Patterns are grouped
+ * by arity up front, so each root only meets the patterns it fits. Each
+ * leaf writes its words into a buffer owned by the worker running it:
+ * <ul>
+ *   <li>unordered: a per-thread scratch buffer, handed straight to the
+ *       sink from the worker, so the sink must be thread-safe;</li>
+ *   <li>ordered: a per-leaf chunk (one char arena plus offsets). Leaves
+ *       are small and claimed in input order, and a worker waits before
+ *       claiming one more than a window of leaves ahead of the sink.
+ *       Finished chunks are drained as soon as every earlier chunk is
+ *       out, one thread at a time, so a slow leaf holds back at most a
+ *       window of chunks.</li>
+ * </ul>
+ * Ordered output follows the roots in input order, then the patterns in
+ * the order given.
+ */
+public class BatchGenerator {
+
+    /**
+     * Receives one derived word, as word[offset .. offset + length).
+     * The buffer is only valid during the call.
+     */
+    public interface Sink {
+        void accept(String root, Pattern pattern, char[] word, int offset, int length);
+    }
+
+    // Leaves per worker, so a slow leaf can be balanced by the others
+    private static final int LEAVES_PER_WORKER = 8;
+    private static final int MIN_LEAF_ROOTS = 16;
+    // Ordered mode: leaf size cap, and chunks allowed ahead of the sink per worker
+    private static final int MAX_ORDERED_LEAF_ROOTS = 256;
+    private static final int WINDOW_PER_WORKER = 2;
+
+    private static final Pattern[] NO_PATTERNS = new Pattern[0];
+    private static final ThreadLocal<char[]> SCRATCH = ThreadLocal.withInitial(() -> new char[32]);
+
+    public static void generate(Collection<String> roots, Collection<Pattern> patterns, boolean ordered, Sink sink) {
+        generate(roots.toArray(new String[0]), patterns, ordered, sink, ForkJoinPool.commonPool());
+    }
+
+    public static void generate(Stream<String> roots, Collection<Pattern> patterns, boolean ordered, Sink sink) {
+        generate(roots.toArray(String[]::new), patterns, ordered, sink, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Every derivation as a list, in root-then-pattern order. Each leaf
+     * fills its own array and they are joined in leaf order after the
+     * pool is done, so workers never contend and the list is in order.
+     */
+    public static List<Derivation> collect(Collection<String> roots, Collection<Pattern> patterns) {
+        String[] array = roots.toArray(new String[0]);
+        List<Derivation> result = new ArrayList<>();
+        if (array.length == 0)
+            return result;
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int grain = grain(array.length, pool);
+        Derivation[][] perLeaf = new Derivation[leaves(array.length, grain)][];
+        pool.invoke(new Split(new Batch(array, groupByArity(patterns), null, grain, 0, perLeaf), 0, perLeaf.length));
+        for (Derivation[] leaf : perLeaf)
+            result.addAll(Arrays.asList(leaf));
+        return result;
+    }
+
+    public static void generate(String[] roots, Collection<Pattern> patterns, boolean ordered, Sink sink, ForkJoinPool pool) {
+        if (roots.length == 0)
+            return;
+        Pattern[][] byArity = groupByArity(patterns);
+        int grain = grain(roots.length, pool);
+        if (!ordered) {
+            pool.invoke(new Split(new Batch(roots, byArity, sink, grain, 0, null), 0, leaves(roots.length, grain)));
+            return;
+        }
+        int window = pool.getParallelism() * WINDOW_PER_WORKER;
+        Batch batch = new Batch(roots, byArity, sink, Math.min(grain, MAX_ORDERED_LEAF_ROOTS), window, null);
+        pool.invoke(new Claim(batch, pool.getParallelism()));
+    }
+
+    private static int grain(int roots, ForkJoinPool pool) {
+        return Math.max(MIN_LEAF_ROOTS, roots / (pool.getParallelism() * LEAVES_PER_WORKER));
+    }
+
+    private static int leaves(int roots, int grain) {
+        return (roots + grain - 1) / grain;
+    }
+
+    /** Patterns bucketed by arity, keeping their given order inside each bucket. */
+    private static Pattern[][] groupByArity(Collection<Pattern> patterns) {
+        int maxArity = 0;
+        for (Pattern p : patterns)
+            maxArity = Math.max(maxArity, p.arity);
+        List<List<Pattern>> groups = new ArrayList<>();
+        for (int a = 0; a <= maxArity; a++)
+            groups.add(new ArrayList<>());
+        for (Pattern p : patterns)
+            if (p.arity > 0)
+                groups.get(p.arity).add(p);
+
+        Pattern[][] byArity = new Pattern[maxArity + 1][];
+        for (int a = 0; a <= maxArity; a++)
+            byArity[a] = groups.get(a).toArray(new Pattern[0]);
+        return byArity;
+    }
+
+    /** Shared state of one generate call. */
+    private static final class Batch {
+        final String[] roots;
+        final Pattern[][] byArity;
+        final Sink sink;
+        final int grain;
+        final int leaves;
+        // Ordered mode only: a ring of finished chunks waiting for their turn,
+        // the next leaf to claim and to emit, and whether some worker is
+        // already emitting
+        final Chunk[] done;
+        int nextClaim;
+        int nextLeaf;
+        boolean draining;
+        // collect only: the derivations of each leaf, in place of a sink
+        final Derivation[][] collected;
+
+        Batch(String[] roots, Pattern[][] byArity, Sink sink, int grain, int window, Derivation[][] collected) {
+            this.roots = roots;
+            this.byArity = byArity;
+            this.sink = sink;
+            this.grain = grain;
+            this.leaves = leaves(roots.length, grain);
+            this.done = window > 0 ? new Chunk[window] : null;
+            this.collected = collected;
+        }
+
+        Pattern[] patternsFor(String root) {
+            int arity = root.length();
+            return arity < byArity.length ? byArity[arity] : NO_PATTERNS;
+        }
+
+        void runLeaf(int leaf) {
+            int from = leaf * grain;
+            int to = Math.min(roots.length, from + grain);
+            if (collected != null)
+                collected[leaf] = derivations(from, to);
+            else
+                emitDirect(from, to);
+        }
+
+        /** Ordered mode: claims and runs leaves in input order until none are left. */
+        void runOrdered() {
+            int leaf;
+            while ((leaf = claim()) >= 0) {
+                int from = leaf * grain;
+                finish(leaf, fill(from, Math.min(roots.length, from + grain)));
+            }
+        }
+
+        /**
+         * The next leaf, or -1 when all are claimed. Waits while that leaf is
+         * a full window ahead of the sink; the leaves before it are already
+         * claimed by running workers, so the wait always ends.
+         */
+        private synchronized int claim() {
+            if (nextClaim == leaves)
+                return -1;
+            int leaf = nextClaim++;
+            while (leaf - nextLeaf >= done.length) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("Interrupted waiting for an earlier leaf");
+                }
+            }
+            return leaf;
+        }
+
+        private Derivation[] derivations(int from, int to) {
+            List<Derivation> out = new ArrayList<>();
+            for (int r = from; r < to; r++) {
+                String root = roots[r];
+                for (Pattern p : patternsFor(root))
+                    out.add(new Derivation(root, p, MorphEngine.generateWord(root, p)));
+            }
+            return out.toArray(new Derivation[0]);
+        }
+
+        private void emitDirect(int from, int to) {
+            char[] buffer = SCRATCH.get();
+            for (int r = from; r < to; r++) {
+                String root = roots[r];
+                for (Pattern p : patternsFor(root)) {
+                    if (buffer.length < p.length()) {
+                        buffer = new char[p.length() * 2];
+                        SCRATCH.set(buffer);
+                    }
+                    int n = MorphEngine.generateWord(root, p, buffer, 0);
+                    sink.accept(root, p, buffer, 0, n);
+                }
+            }
+        }
+
+        private Chunk fill(int from, int to) {
+            int words = 0;
+            int letters = 0;
+            for (int r = from; r < to; r++) {
+                for (Pattern p : patternsFor(roots[r])) {
+                    words++;
+                    letters += p.length();
+                }
+            }
+
+            Chunk chunk = new Chunk(words, letters);
+            int w = 0;
+            for (int r = from; r < to; r++) {
+                String root = roots[r];
+                for (Pattern p : patternsFor(root)) {
+                    int n = MorphEngine.generateWord(root, p, chunk.arena, chunk.offsets[w]);
+                    chunk.offsets[w + 1] = chunk.offsets[w] + n;
+                    chunk.patterns[w] = p;
+                    chunk.rootOf[w] = r;
+                    w++;
+                }
+            }
+            return chunk;
+        }
+
+        /**
+         * Parks the chunk; if no one is emitting, emits every chunk now next
+         * in line. The sink runs outside the lock so other leaves can park.
+         */
+        private void finish(int leaf, Chunk chunk) {
+            synchronized (this) {
+                done[leaf % done.length] = chunk;
+                if (draining)
+                    return;
+                draining = true;
+            }
+            while (true) {
+                Chunk c;
+                synchronized (this) {
+                    int slot = nextLeaf % done.length;
+                    if (nextLeaf == leaves || done[slot] == null) {
+                        draining = false;
+                        return;
+                    }
+                    c = done[slot];
+                    done[slot] = null;
+                    nextLeaf++;
+                    notifyAll();
+                }
+                for (int w = 0; w < c.patterns.length; w++)
+                    sink.accept(roots[c.rootOf[w]], c.patterns[w], c.arena, c.offsets[w], c.offsets[w + 1] - c.offsets[w]);
+            }
+        }
+    }
+
+    /** Words of one leaf, back to back. */
+    private static final class Chunk {
+        final char[] arena;
+        final int[] offsets;
+        final Pattern[] patterns;
+        final int[] rootOf;
+
+        Chunk(int words, int letters) {
+            this.arena = new char[letters];
+            this.offsets = new int[words + 1];
+            this.patterns = new Pattern[words];
+            this.rootOf = new int[words];
+        }
+    }
+
+    /** Leaves [from, to), halved until one leaf is left. */
+    private static final class Split extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        // Tasks are never serialized
+        final transient Batch batch;
+        final int from;
+        final int to;
+
+        Split(Batch batch, int from, int to) {
+            this.batch = batch;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                batch.runLeaf(from);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Split(batch, from, mid), new Split(batch, mid, to));
+        }
+    }
+
+    /** Ordered mode: the given number of workers, each claiming leaves in turn. */
+    private static final class Claim extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        // Tasks are never serialized
+        final transient Batch batch;
+        final int workers;
+
+        Claim(Batch batch, int workers) {
+            this.batch = batch;
+            this.workers = workers;
+        }
+
+        @Override
+        protected void compute() {
+            if (workers == 1) {
+                batch.runOrdered();
+                return;
+            }
+            int half = workers >>> 1;
+            invokeAll(new Claim(batch, half), new Claim(batch, workers - half));
+        }
+    }
+}
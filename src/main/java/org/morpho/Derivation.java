@@ -0,0 +1,21 @@
+package org.morpho;
+
+/**
+ * One generated word: the root and pattern it comes from.
+ */
+public class Derivation {
+    public String root;
+    public Pattern pattern;
+    public String word;
+
+    public Derivation(String root, Pattern pattern, String word) {
+        this.root = root;
+        this.pattern = pattern;
+        this.word = word;
+    }
+
+    @Override
+    public String toString() {
+        return root + " + " + pattern.name + " → " + word;
+    }
+}
@@ -0,0 +1,297 @@
+package org.morpho;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Bounded cache of derived words, shared by every generation path.
+ *
+ * Entries are keyed by (root, pattern ordinal). Ordinals are unique per
+ * Pattern object, so an edited pattern gets fresh entries and the stale
+ * ones can never be returned. They age out on their own, or can be
+ * dropped at once with {@link #invalidate(Pattern)} / {@link #invalidate(String)},
+ * or many at a time with {@link #invalidatePatterns} / {@link #invalidateRoots}.
+ *
+ * The cache is split into shards, each a segmented LRU under its own lock:
+ * new words enter a probation segment and are promoted to a protected
+ * segment on their second hit. Eviction takes the least recently used
+ * probation entry first, so a burst of one-off lookups (listing every
+ * derivative of a new root) cannot flush the pairs a quiz keeps asking for.
+ *
+ * The byte budget comes from the "morpho.cache.bytes" system property
+ * (default 8 MB) and is an estimate of retained heap, not an exact count.
+ */
+public class DerivationCache {
+
+    private static final long DEFAULT_BYTES = 8L << 20;
+    private static final int SHARD_BITS = 4;
+    private static final int SHARDS = 1 << SHARD_BITS;
+    // Share of each shard kept for entries that have been hit at least twice
+    private static final int PROTECTED_PERCENT = 80;
+    // Key and node objects, two String headers and their arrays, map links
+    private static final int ENTRY_OVERHEAD = 160;
+
+    private static final DerivationCache SHARED =
+            new DerivationCache(Long.getLong("morpho.cache.bytes", DEFAULT_BYTES));
+
+    private final Shard[] shards;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public DerivationCache(long maxBytes) {
+        long perShard = Math.max(maxBytes / SHARDS, 0);
+        shards = new Shard[SHARDS];
+        for (int i = 0; i < SHARDS; i++)
+            shards[i] = new Shard(perShard);
+    }
+
+    /** The process-wide cache used by the console, levels and frames. */
+    public static DerivationCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Word derived from root with pattern, generated and cached on a miss.
+     * Returns null, without caching, when the root does not fit the pattern.
+     */
+    public String generate(String root, Pattern pattern) {
+        String word = get(root, pattern);
+        if (word != null)
+            return word;
+        word = MorphEngine.generateWord(root, pattern);
+        if (word != null)
+            put(root, pattern, word);
+        return word;
+    }
+
+    /** Cached word for (root, pattern), or null. Counts as a hit or a miss. */
+    public String get(String root, Pattern pattern) {
+        Key key = new Key(root, pattern.ordinal);
+        String word = shardFor(key).get(key);
+        if (word != null)
+            hits.incrementAndGet();
+        else
+            misses.incrementAndGet();
+        return word;
+    }
+
+    public void put(String root, Pattern pattern, String word) {
+        Key key = new Key(root, pattern.ordinal);
+        int evicted = shardFor(key).put(key, word);
+        if (evicted > 0)
+            evictions.addAndGet(evicted);
+    }
+
+    public void clear() {
+        for (Shard shard : shards)
+            shard.clear();
+    }
+
+    /** Drops every word derived with pattern. Scans the whole cache. */
+    public void invalidate(Pattern pattern) {
+        for (Shard shard : shards)
+            shard.removeIf(key -> key.pattern == pattern.ordinal);
+    }
+
+    /** Drops every word derived from root. Scans the whole cache. */
+    public void invalidate(String root) {
+        for (Shard shard : shards)
+            shard.removeIf(key -> key.root.equals(root));
+    }
+
+    /** Drops every word derived with any of patterns, in one scan of the cache. */
+    public void invalidatePatterns(Collection<Pattern> patterns) {
+        if (patterns.isEmpty())
+            return;
+        Set<Integer> ordinals = new HashSet<>();
+        for (Pattern p : patterns)
+            ordinals.add(p.ordinal);
+        for (Shard shard : shards)
+            shard.removeIf(key -> ordinals.contains(key.pattern));
+    }
+
+    /** Drops every word derived from any of roots, in one scan of the cache. */
+    public void invalidateRoots(Collection<String> roots) {
+        if (roots.isEmpty())
+            return;
+        Set<String> set = new HashSet<>(roots);
+        for (Shard shard : shards)
+            shard.removeIf(key -> set.contains(key.root));
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    public int size() {
+        int n = 0;
+        for (Shard shard : shards)
+            n += shard.size();
+        return n;
+    }
+
+    /** Estimated bytes held by the cached entries. */
+    public long bytes() {
+        long n = 0;
+        for (Shard shard : shards)
+            n += shard.bytes();
+        return n;
+    }
+
+    @Override
+    public String toString() {
+        long h = hits(), m = misses();
+        double rate = h + m == 0 ? 0.0 : 100.0 * h / (h + m);
+        return String.format("entries=%d bytes=%d hits=%d misses=%d (%.1f%% hit) evictions=%d",
+                size(), bytes(), h, m, rate, evictions());
+    }
+
+    private Shard shardFor(Key key) {
+        return shards[key.hash >>> (32 - SHARD_BITS)];
+    }
+
+    private static long cost(Key key, String word) {
+        return ENTRY_OVERHEAD + 2L * (key.root.length() + word.length());
+    }
+
+    private static final class Key {
+        final String root;
+        final int pattern;
+        final int hash;
+
+        Key(String root, int pattern) {
+            this.root = root;
+            this.pattern = pattern;
+            int h = (root.hashCode() * 31 + pattern) * 0x9E3779B9;
+            this.hash = h ^ (h >>> 16);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key) o;
+            return pattern == k.pattern && root.equals(k.root);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /** One segmented LRU; both segments are access-ordered, eldest first. */
+    private static final class Shard {
+        final long maxBytes;
+        final long maxProtectedBytes;
+        final LinkedHashMap<Key, String> probation = new LinkedHashMap<>(16, 0.75f, true);
+        final LinkedHashMap<Key, String> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+        long probationBytes;
+        long protectedBytes;
+
+        Shard(long maxBytes) {
+            this.maxBytes = maxBytes;
+            this.maxProtectedBytes = maxBytes * PROTECTED_PERCENT / 100;
+        }
+
+        synchronized String get(Key key) {
+            String word = protectedSegment.get(key);
+            if (word != null)
+                return word;
+            word = probation.remove(key);
+            if (word == null)
+                return null;
+
+            // Second hit: promote, demoting protected entries back to probation if it overflows
+            long c = cost(key, word);
+            probationBytes -= c;
+            protectedSegment.put(key, word);
+            protectedBytes += c;
+            Iterator<Map.Entry<Key, String>> it = protectedSegment.entrySet().iterator();
+            while (protectedBytes > maxProtectedBytes && it.hasNext()) {
+                Map.Entry<Key, String> eldest = it.next();
+                if (eldest.getKey() == key)
+                    break;
+                it.remove();
+                long ec = cost(eldest.getKey(), eldest.getValue());
+                protectedBytes -= ec;
+                probation.put(eldest.getKey(), eldest.getValue());
+                probationBytes += ec;
+            }
+            return word;
+        }
+
+        /** Adds key to probation and returns the number of entries evicted to make room. */
+        synchronized int put(Key key, String word) {
+            if (protectedSegment.containsKey(key) || probation.containsKey(key))
+                return 0;
+            probation.put(key, word);
+            probationBytes += cost(key, word);
+
+            int evicted = 0;
+            while (probationBytes + protectedBytes > maxBytes) {
+                LinkedHashMap<Key, String> victims = probation.isEmpty() ? protectedSegment : probation;
+                Iterator<Map.Entry<Key, String>> it = victims.entrySet().iterator();
+                if (!it.hasNext())
+                    break;
+                Map.Entry<Key, String> eldest = it.next();
+                it.remove();
+                long c = cost(eldest.getKey(), eldest.getValue());
+                if (victims == probation)
+                    probationBytes -= c;
+                else
+                    protectedBytes -= c;
+                evicted++;
+            }
+            return evicted;
+        }
+
+        synchronized void removeIf(Predicate<Key> doomed) {
+            probationBytes -= removeIf(probation, doomed);
+            protectedBytes -= removeIf(protectedSegment, doomed);
+        }
+
+        private static long removeIf(LinkedHashMap<Key, String> segment, Predicate<Key> doomed) {
+            long freed = 0;
+            Iterator<Map.Entry<Key, String>> it = segment.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Key, String> e = it.next();
+                if (doomed.test(e.getKey())) {
+                    freed += cost(e.getKey(), e.getValue());
+                    it.remove();
+                }
+            }
+            return freed;
+        }
+
+        synchronized void clear() {
+            probation.clear();
+            protectedSegment.clear();
+            probationBytes = 0;
+            protectedBytes = 0;
+        }
+
+        synchronized int size() {
+            return probation.size() + protectedSegment.size();
+        }
+
+        synchronized long bytes() {
+            return probationBytes + protectedBytes;
+        }
+    }
+}
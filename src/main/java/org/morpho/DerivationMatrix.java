@@ -0,0 +1,177 @@
+package org.morpho;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Every word of a fixed roots × patterns grid, generated up front.
+ *
+ * All words live back to back in one char[] arena. Cell (r, c) spans
+ * arena[offsets[k] .. offsets[k + 1]) with k = r * columns + c; a root that
+ * does not fit a pattern gives an empty span, which takes no letters but
+ * still its 4-byte offset, like every cell. Both arrays are indexed by int,
+ * so a grid of more than about 2^31 cells or letters is refused. Rows are
+ * the roots in sorted order, found by binary search, and columns are found
+ * through a map from each Pattern object to its column, sized by the
+ * columns alone; a lookup is a search, a map probe and two array reads.
+ *
+ * Rows are filled in parallel; the matrix is immutable once built.
+ */
+public class DerivationMatrix {
+
+    // Largest array length every JVM allows
+    private static final int MAX_ARRAY = Integer.MAX_VALUE - 8;
+
+    private final String[] roots;
+    private final Pattern[] patterns;
+    // Column of each Pattern object; patterns not in the matrix are absent
+    private final Map<Pattern, Integer> columnOf;
+    private final int[] offsets;
+    private final char[] arena;
+
+    private DerivationMatrix(String[] roots, Pattern[] patterns, Map<Pattern, Integer> columnOf, int[] offsets, char[] arena) {
+        this.roots = roots;
+        this.patterns = patterns;
+        this.columnOf = columnOf;
+        this.offsets = offsets;
+        this.arena = arena;
+    }
+
+    /**
+     * Builds the matrix for sortedRoots (ascending, no duplicates) × patterns.
+     */
+    public static DerivationMatrix build(List<String> sortedRoots, List<Pattern> patterns) {
+        String[] rows = sortedRoots.toArray(new String[0]);
+        Pattern[] cols = patterns.toArray(new Pattern[0]);
+        int columns = cols.length;
+
+        // Sizes are known from arity and weak-root rules alone, so offsets need no generation pass
+        int[] offsets = new int[checkedSize((long) rows.length * columns + 1, rows.length, columns, "cells")];
+        long letters = 0;
+        int k = 0;
+        for (String root : rows) {
+            for (Pattern p : cols) {
+                letters += Math.max(MorphEngine.wordLength(root, p), 0);
+                offsets[++k] = checkedSize(letters, rows.length, columns, "letters");
+            }
+        }
+
+        char[] arena = new char[offsets[offsets.length - 1]];
+        IntStream.range(0, rows.length).parallel().forEach(r -> {
+            String root = rows[r];
+            for (int c = 0; c < columns; c++) {
+                int cell = r * columns + c;
+                if (offsets[cell + 1] > offsets[cell])
+                    MorphEngine.generateWord(root, cols[c], arena, offsets[cell]);
+            }
+        });
+
+        return new DerivationMatrix(rows, cols, columnIndex(cols), offsets, arena);
+    }
+
+    /** size as an array length, or an exception naming the grid if no array can hold it. */
+    private static int checkedSize(long size, int rows, int columns, String what) {
+        if (size > MAX_ARRAY)
+            throw new IllegalArgumentException("Derivation matrix too large: " + rows + " roots × " + columns
+                    + " patterns needs " + size + " " + what + ", more than one array holds (" + MAX_ARRAY + ")");
+        return (int) size;
+    }
+
+    private static Map<Pattern, Integer> columnIndex(Pattern[] cols) {
+        Map<Pattern, Integer> columnOf = new IdentityHashMap<>(cols.length);
+        for (int c = 0; c < cols.length; c++)
+            columnOf.put(cols[c], c);
+        return columnOf;
+    }
+
+    /**
+     * Writes the offsets and the arena; rows and columns are the caller's
+     * to store, in the same order.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(offsets.length);
+        for (int offset : offsets)
+            out.writeInt(offset);
+        out.writeInt(arena.length);
+        for (char c : arena)
+            out.writeChar(c);
+    }
+
+    /**
+     * Reads back what {@link #writeTo} wrote, for the same sortedRoots and
+     * patterns, with two bulk copies. Returns null if the sizes disagree.
+     */
+    public static DerivationMatrix readFrom(ByteBuffer in, String[] sortedRoots, Pattern[] patterns) {
+        int cells = in.getInt();
+        if (cells != (long) sortedRoots.length * patterns.length + 1)
+            return null;
+        int[] offsets = new int[cells];
+        in.asIntBuffer().get(offsets);
+        in.position(in.position() + offsets.length * Integer.BYTES);
+        char[] arena = new char[in.getInt()];
+        in.asCharBuffer().get(arena);
+        in.position(in.position() + arena.length * Character.BYTES);
+        return new DerivationMatrix(sortedRoots, patterns, columnIndex(patterns), offsets, arena);
+    }
+
+    /**
+     * The same words found through other Pattern objects: each of current
+     * takes the column of the pattern with its name and template, if any.
+     * For patterns compiled again from the same text, which are other
+     * objects than the ones the matrix was built or read with.
+     */
+    public DerivationMatrix forPatterns(Collection<Pattern> current) {
+        Map<String, Integer> columns = new HashMap<>();
+        for (int c = 0; c < patterns.length; c++)
+            columns.put(patterns[c].name, c);
+        Map<Pattern, Integer> remapped = new IdentityHashMap<>(patterns.length);
+        for (Pattern p : current) {
+            Integer c = columns.get(p.name);
+            if (c != null && patterns[c].template.equals(p.template))
+                remapped.put(p, c);
+        }
+        return new DerivationMatrix(roots, patterns, remapped, offsets, arena);
+    }
+
+    /**
+     * Word for (root, pattern), or null if the cell is empty or outside the matrix.
+     */
+    public String get(String root, Pattern pattern) {
+        int c = column(pattern);
+        if (c < 0)
+            return null;
+        int r = Arrays.binarySearch(roots, root);
+        if (r < 0)
+            return null;
+        int cell = r * patterns.length + c;
+        int start = offsets[cell];
+        int end = offsets[cell + 1];
+        return end == start ? null : new String(arena, start, end - start);
+    }
+
+    private int column(Pattern pattern) {
+        Integer c = columnOf.get(pattern);
+        return c == null ? -1 : c;
+    }
+
+    public int rows() {
+        return roots.length;
+    }
+
+    public int columns() {
+        return patterns.length;
+    }
+
+    /** Number of letters stored in the arena. */
+    public int letters() {
+        return arena.length;
+    }
+}
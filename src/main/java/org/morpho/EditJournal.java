@@ -0,0 +1,383 @@
+package org.morpho;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of root and pattern edits, so they survive a restart.
+ *
+ * Each edit is one record: length, op, key, template cells, CRC32.
+ * {@link #append} only encodes the record into a memory buffer and
+ * returns; a flush a few milliseconds later writes everything appended
+ * meanwhile with a single write and a single fsync (group commit).
+ * {@link #sync} and {@link #close} wait for that flush.
+ *
+ * {@link #replay} reads the records back in order. A record cut short by
+ * a crash fails its length or checksum test; it and anything after it is
+ * dropped and the file truncated there.
+ *
+ * Once enough records pile up, a background compaction folds the log into
+ * the shortest sequence with the same effect (the last add or remove of
+ * each root, the last put or remove of each pattern plus its final
+ * enabled state) and atomically replaces the file with it. A folded put
+ * keeps a remove in front of it, since the base file may still hold an
+ * older pattern under the same name.
+ *
+ * One shutdown hook flushes every journal still open when the JVM exits.
+ */
+public class EditJournal implements Closeable {
+
+    public enum Op { ADD_ROOT, REMOVE_ROOT, PUT_PATTERN, REMOVE_PATTERN, ENABLE_PATTERN, DISABLE_PATTERN }
+
+    /** Receives replayed records; template is empty except for PUT_PATTERN. */
+    public interface Replayer {
+        void apply(Op op, String key, List<String> template);
+    }
+
+    private static final long FLUSH_DELAY_MILLIS = 2;
+    private static final long COMPACT_CHECK_SECONDS = 30;
+    private static final int COMPACT_THRESHOLD = 1000;
+    // Upper bound on one record, to recognize a garbage length after a crash
+    private static final int MAX_RECORD = 1 << 20;
+
+    private static final ScheduledThreadPoolExecutor SCHEDULER = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread t = new Thread(r, "edit-journal");
+        t.setDaemon(true);
+        return t;
+    });
+    // Journals not yet closed, flushed by the shutdown hook
+    private static final Set<EditJournal> OPEN = ConcurrentHashMap.newKeySet();
+
+    static {
+        // Drop a closed journal's compaction task at once instead of at its next run
+        SCHEDULER.setRemoveOnCancelPolicy(true);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (EditJournal journal : OPEN) {
+                journal.flushQuietly();
+            }
+        }, "edit-journal-exit"));
+    }
+
+    private final Path file;
+    // Held while writing to the file: flush and compaction
+    private final Object fileLock = new Object();
+    private FileChannel channel;
+    private final ScheduledFuture<?> compactor;
+
+    // Guarded by this: records not yet handed to a flush
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private long appended;
+    private long durable;
+    private boolean flushScheduled;
+    private int records;
+    private boolean closed;
+
+    public EditJournal(Path file) throws IOException {
+        this.file = file;
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.channel.position(channel.size());
+        this.compactor = SCHEDULER.scheduleWithFixedDelay(this::compactIfLarge,
+                COMPACT_CHECK_SECONDS, COMPACT_CHECK_SECONDS, TimeUnit.SECONDS);
+        OPEN.add(this);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Feeds every intact record to replayer, in order, and truncates a torn
+     * tail left by a crash.
+     */
+    public void replay(Replayer replayer) throws IOException {
+        synchronized (fileLock) {
+            List<Record> all = readAll();
+            for (Record r : all) {
+                replayer.apply(r.op, r.key, r.template);
+            }
+            synchronized (this) {
+                records = all.size();
+            }
+        }
+    }
+
+    public void append(Op op, String key) {
+        append(op, key, Collections.emptyList());
+    }
+
+    /** Buffers one edit; it reaches the disk with the next group flush. */
+    public synchronized void append(Op op, String key, List<String> template) {
+        if (closed) {
+            throw new IllegalStateException("Journal closed: " + file);
+        }
+        byte[] record = encode(new Record(op, key, template));
+        pending.write(record, 0, record.length);
+        appended++;
+        records++;
+        if (!flushScheduled) {
+            flushScheduled = true;
+            SCHEDULER.schedule(this::flushQuietly, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Blocks until every edit appended so far is on disk. */
+    public void sync() throws IOException {
+        long target;
+        synchronized (this) {
+            target = appended;
+        }
+        flush();
+        synchronized (this) {
+            while (durable < target) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for journal sync");
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        sync();
+        compactor.cancel(false);
+        OPEN.remove(this);
+        synchronized (this) {
+            closed = true;
+        }
+        synchronized (fileLock) {
+            channel.close();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            System.err.println("✗ Journal write failed: " + file + ": " + e.getMessage());
+        }
+    }
+
+    /** Writes and fsyncs everything pending as one batch. */
+    private void flush() throws IOException {
+        synchronized (fileLock) {
+            byte[] batch;
+            long upTo;
+            synchronized (this) {
+                flushScheduled = false;
+                if (pending.size() == 0) {
+                    return;
+                }
+                batch = pending.toByteArray();
+                pending = new ByteArrayOutputStream();
+                upTo = appended;
+            }
+            ByteBuffer buf = ByteBuffer.wrap(batch);
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            channel.force(false);
+            synchronized (this) {
+                durable = upTo;
+                notifyAll();
+            }
+        }
+    }
+
+    private void compactIfLarge() {
+        synchronized (this) {
+            if (closed || records < COMPACT_THRESHOLD) {
+                return;
+            }
+        }
+        try {
+            compact();
+        } catch (IOException e) {
+            System.err.println("✗ Journal compaction failed: " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Rewrites the file as the shortest record sequence with the same effect.
+     * Appends may continue meanwhile; they are flushed after the swap.
+     */
+    public void compact() throws IOException {
+        synchronized (fileLock) {
+            flush();
+            List<Record> folded = fold(readAll());
+
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                for (Record r : folded) {
+                    ByteBuffer buf = ByteBuffer.wrap(encode(r));
+                    while (buf.hasRemaining()) {
+                        out.write(buf);
+                    }
+                }
+                out.force(false);
+            }
+            // The old channel stays open until the new file is in place and
+            // open, so a failed move leaves appends going where they went
+            FileChannel previous = channel;
+            boolean moved = false;
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                moved = true;
+            } finally {
+                if (moved) {
+                    FileChannel reopened = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    reopened.position(reopened.size());
+                    channel = reopened;
+                    previous.close();
+                } else {
+                    Files.deleteIfExists(tmp);
+                }
+            }
+            synchronized (this) {
+                records = folded.size() + (int) (appended - durable);
+            }
+        }
+    }
+
+    /** Closes the journal and deletes its file, so nothing is replayed from it again. */
+    public void delete() throws IOException {
+        close();
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(file.resolveSibling(file.getFileName() + ".tmp"));
+    }
+
+    /**
+     * Keeps, per root, its last add or remove and, per pattern, its last
+     * put or remove followed by its last enable or disable. Keys are
+     * compared in normal form, as the level looks them up, so فَعال and
+     * فعال are one pattern. Edits to different keys are independent, so
+     * their relative order can go.
+     * A put is kept as remove + put: replayed over a base file that has
+     * the pattern, it must replace it rather than add a second one.
+     */
+    private static List<Record> fold(List<Record> all) {
+        Map<String, Record> roots = new LinkedHashMap<>();
+        Map<String, List<Record>> patterns = new LinkedHashMap<>();
+        for (Record r : all) {
+            String key = Normalizer.DEFAULT.normalize(r.key);
+            switch (r.op) {
+                case ADD_ROOT, REMOVE_ROOT -> {
+                    roots.remove(key);
+                    roots.put(key, r);
+                }
+                case PUT_PATTERN, REMOVE_PATTERN -> {
+                    List<Record> list = new ArrayList<>(3);
+                    if (r.op == Op.PUT_PATTERN) {
+                        list.add(new Record(Op.REMOVE_PATTERN, r.key, Collections.emptyList()));
+                    }
+                    list.add(r);
+                    patterns.remove(key);
+                    patterns.put(key, list);
+                }
+                case ENABLE_PATTERN, DISABLE_PATTERN -> {
+                    List<Record> list = patterns.computeIfAbsent(key, k -> new ArrayList<>(3));
+                    list.removeIf(x -> x.op == Op.ENABLE_PATTERN || x.op == Op.DISABLE_PATTERN);
+                    list.add(r);
+                }
+            }
+        }
+        List<Record> folded = new ArrayList<>(roots.values());
+        for (List<Record> list : patterns.values()) {
+            folded.addAll(list);
+        }
+        return folded;
+    }
+
+    /** Reads every intact record; truncates the file after the last one. */
+    private List<Record> readAll() throws IOException {
+        List<Record> all = new ArrayList<>();
+        long size = channel.size();
+        ByteBuffer data = ByteBuffer.allocate((int) size);
+        while (data.hasRemaining() && channel.read(data, data.position()) > 0) {
+            // Keep reading
+        }
+        data.flip();
+
+        long good = 0;
+        while (data.remaining() >= Integer.BYTES) {
+            int length = data.getInt();
+            if (length <= 0 || length > MAX_RECORD || data.remaining() < length + Long.BYTES) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            data.get(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if (data.getLong() != crc.getValue()) {
+                break;
+            }
+            all.add(decode(payload));
+            good = data.position();
+        }
+        if (good < size) {
+            System.err.println("⚠ Journal truncated after a torn record: " + file);
+            channel.truncate(good);
+        }
+        channel.position(good);
+        return all;
+    }
+
+    private static byte[] encode(Record r) {
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream(32);
+            DataOutputStream out = new DataOutputStream(payload);
+            out.writeByte(r.op.ordinal());
+            out.writeUTF(r.key);
+            out.writeShort(r.template.size());
+            for (String cell : r.template) {
+                out.writeUTF(cell);
+            }
+            byte[] bytes = payload.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+
+            ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + bytes.length + Long.BYTES);
+            record.putInt(bytes.length).put(bytes).putLong(crc.getValue());
+            return record.array();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Record decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        Op op = Op.values()[in.readUnsignedByte()];
+        String key = in.readUTF();
+        int cells = in.readUnsignedShort();
+        List<String> template = new ArrayList<>(cells);
+        for (int i = 0; i < cells; i++) {
+            template.add(in.readUTF());
+        }
+        return new Record(op, key, template);
+    }
+
+    private static final class Record {
+        final Op op;
+        final String key;
+        final List<String> template;
+
+        Record(Op op, String key, List<String> template) {
+            this.op = op;
+            this.key = key;
+            this.template = template;
+        }
+    }
+}
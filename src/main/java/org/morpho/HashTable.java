@@ -1,62 +1,501 @@
 package org.morpho;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
-public class HashTable {
+/**
+ * Thread-safe pattern table with open addressing.
+ *
+ * Keys are spread over a fixed number of segments. Each segment is a small
+ * open-addressing table (parallel key/value arrays, linear probing from a
+ * mixed hash, doubling at 3/4 load, backward-shift deletion) that is never
+ * changed once published: a writer locks only its segment, edits a copy
+ * and publishes it with a volatile write. Readers therefore take no lock,
+ * never see a half-moved probe run, and iteration is weakly consistent -
+ * it sees each segment as of some moment, never throws
+ * ConcurrentModificationException, and may miss edits made while it runs.
+ *
+ * Traversal ({@link #forEach}, {@link #iterator}, {@link #spliterator})
+ * walks the slot arrays in place without copying the patterns out.
+ *
+ * Single inserts copy their segment, which is fine for edits but
+ * quadratic for loading a whole file; loads go through {@link #of} or
+ * {@link #putAll}, which copy each segment once.
+ */
+public class HashTable implements Iterable<Pattern> {
 
+    private static final int SEGMENT_BITS = 4;
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
+    private static final int INITIAL_CAPACITY = 4;
 
-    private int size = 23;
-    private List<HashTableEntry>[] table;
+    private final Segment[] segments;
+
+    // Bumped after every change so the shape index can tell it is stale
+    private final AtomicInteger modCount = new AtomicInteger();
+    private volatile IndexSnapshot shapeIndex;
+    // Set once by freeze(); edits then throw
+    private volatile boolean frozen;
+
+    // Kept in step with every change, one pattern path at a time
+    private final AtomicReference<PatternAutomaton> automaton =
+            new AtomicReference<>(PatternAutomaton.EMPTY);
 
     public HashTable() {
-        table = new ArrayList[size];
-        for (int i = 0; i < size; i++)
-            table[i] = new ArrayList<>();
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++)
+            segments[i] = new Segment(Slots.empty(INITIAL_CAPACITY));
+    }
+
+    /** Table holding patterns, built with one copy per segment. */
+    public static HashTable of(Map<String, Pattern> patterns) {
+        HashTable table = new HashTable();
+        table.putAll(patterns);
+        return table;
+    }
+
+    /**
+     * Inserts or replaces every entry, like {@link #insert} for each, but
+     * copies each segment once and updates the automaton once per segment.
+     */
+    public void putAll(Map<String, Pattern> patterns) {
+        checkEditable();
+        if (patterns.isEmpty())
+            return;
+        List<List<Map.Entry<String, Pattern>>> bySegment = new ArrayList<>(SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++)
+            bySegment.add(new ArrayList<>());
+        for (Map.Entry<String, Pattern> e : patterns.entrySet())
+            bySegment.get(hash(e.getKey()) >>> (32 - SEGMENT_BITS)).add(e);
+
+        for (int k = 0; k < SEGMENTS; k++) {
+            List<Map.Entry<String, Pattern>> entries = bySegment.get(k);
+            if (entries.isEmpty())
+                continue;
+            Segment seg = segments[k];
+            synchronized (seg) {
+                Slots next = seg.slots.copyForInsert(entries.size());
+                List<Pattern> replaced = new ArrayList<>();
+                for (Map.Entry<String, Pattern> e : entries) {
+                    int h = hash(e.getKey());
+                    int i = next.find(e.getKey(), h);
+                    if (i >= 0) {
+                        replaced.add(next.values[i]);
+                        next.values[i] = e.getValue();
+                    } else {
+                        next.place(e.getKey(), h, e.getValue());
+                    }
+                }
+                seg.slots = next;
+                // Under the lock, as in insert: another edit of these keys sees slots and automaton agree
+                automaton.updateAndGet(a -> {
+                    for (Pattern old : replaced)
+                        a = a.without(old);
+                    for (Map.Entry<String, Pattern> e : entries)
+                        a = a.with(e.getValue());
+                    return a;
+                });
+            }
+        }
+        modCount.incrementAndGet();
     }
 
-    private int hash(String key) {
-        return Math.abs(key.hashCode()) % size;
+    /** Spreads String.hashCode over all bits so low-bit masking stays uniform. */
+    private static int hash(String key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // High bits pick the segment, low bits the slot inside it
+    private Segment segmentFor(int hash) {
+        return segments[hash >>> (32 - SEGMENT_BITS)];
     }
 
     public void addPattern(String key, Pattern value) {
-        int index = hash(key);
-        table[index].add(new HashTableEntry(key, value));
+        checkEditable();
+        int h = hash(key);
+        Segment seg = segmentFor(h);
+        synchronized (seg) {
+            Slots next = seg.slots.copyForInsert();
+            next.place(key, h, value);
+            seg.slots = next;
+            automaton.updateAndGet(a -> a.with(value));
+        }
+        modCount.incrementAndGet();
     }
 
     public boolean updatePattern(String key, Pattern newValue) {
-        int index = hash(key);
-        for (HashTableEntry e : table[index]) {
-            if (e.key.equals(key)) {
-                e.value = newValue;
-                return true;
-            }
+        checkEditable();
+        int h = hash(key);
+        Segment seg = segmentFor(h);
+        synchronized (seg) {
+            int i = seg.slots.find(key, h);
+            if (i < 0)
+                return false;
+            Pattern old = seg.slots.values[i];
+            Slots next = seg.slots.copy();
+            next.values[i] = newValue;
+            seg.slots = next;
+            automaton.updateAndGet(a -> a.without(old).with(newValue));
         }
-        return false;
+        modCount.incrementAndGet();
+        return true;
     }
 
     public boolean deletePattern(String key) {
-        int index = hash(key);
-        return table[index].removeIf(e -> e.key.equals(key));
+        checkEditable();
+        int h = hash(key);
+        Segment seg = segmentFor(h);
+        synchronized (seg) {
+            if (seg.slots.find(key, h) < 0)
+                return false;
+            Slots next = seg.slots.copy();
+            int i;
+            while ((i = next.find(key, h)) >= 0) {
+                Pattern old = next.values[i];
+                automaton.updateAndGet(a -> a.without(old));
+                next.removeAt(i);
+            }
+            seg.slots = next;
+        }
+        modCount.incrementAndGet();
+        return true;
     }
 
 
     public void insert(String key, Pattern value) {
-        int index = hash(key);
-        for (HashTableEntry e : table[index]) {
-            if (e.key.equals(key)) {
-                e.value = value;
-                return;
+        checkEditable();
+        int h = hash(key);
+        Segment seg = segmentFor(h);
+        synchronized (seg) {
+            int i = seg.slots.find(key, h);
+            if (i >= 0) {
+                Pattern old = seg.slots.values[i];
+                Slots next = seg.slots.copy();
+                next.values[i] = value;
+                seg.slots = next;
+                automaton.updateAndGet(a -> a.without(old).with(value));
+            } else {
+                Slots next = seg.slots.copyForInsert();
+                next.place(key, h, value);
+                seg.slots = next;
+                automaton.updateAndGet(a -> a.with(value));
             }
         }
-        table[index].add(new HashTableEntry(key, value));
+        modCount.incrementAndGet();
+    }
+
+    /**
+     * Makes this table read-only, for sharing: edits then throw
+     * UnsupportedOperationException, while {@link #copy()} still gives an
+     * editable table.
+     * @return This table
+     */
+    public HashTable freeze() {
+        frozen = true;
+        return this;
+    }
+
+    private void checkEditable() {
+        if (frozen)
+            throw new UnsupportedOperationException("Read-only pattern table: edit a copy()");
+    }
+
+    /** Pattern stored under key, or null. Lock-free. */
+    public Pattern get(String key) {
+        int h = hash(key);
+        Slots s = segmentFor(h).slots;
+        int i = s.find(key, h);
+        return i < 0 ? null : s.values[i];
+    }
+
+    public int size() {
+        int n = 0;
+        for (Segment seg : segments)
+            n += seg.slots.count;
+        return n;
     }
 
+    /**
+     * Independent table with the same patterns. Published segments are
+     * immutable, so they and the automaton are shared as they are.
+     */
+    public HashTable copy() {
+        HashTable copy = new HashTable();
+        for (int i = 0; i < SEGMENTS; i++)
+            copy.segments[i].slots = segments[i].slots;
+        copy.automaton.set(automaton.get());
+        return copy;
+    }
+
+    /** Copy of the current patterns; prefer {@link #forEach} or iteration when a list is not needed. */
     public List<Pattern> values() {
-        List<Pattern> all = new ArrayList<>();
-        for (List<HashTableEntry> bucket : table)
-            for (HashTableEntry e : bucket)
-                all.add(e.value);
+        List<Pattern> all = new ArrayList<>(size());
+        forEach(all::add);
         return all;
     }
+
+    @Override
+    public void forEach(Consumer<? super Pattern> action) {
+        for (Segment seg : segments)
+            seg.slots.forEach(action);
+    }
+
+    /** Weakly consistent iterator; each segment is read when the iterator reaches it. */
+    @Override
+    public Iterator<Pattern> iterator() {
+        return new Iterator<>() {
+            private int segment = 0;
+            private Slots slots = segments[0].slots;
+            private int slot = -1;
+
+            {
+                advance();
+            }
+
+            private void advance() {
+                while (true) {
+                    slot++;
+                    while (slot < slots.keys.length) {
+                        if (slots.keys[slot] != null)
+                            return;
+                        slot++;
+                    }
+                    if (++segment == SEGMENTS)
+                        return;
+                    slots = segments[segment].slots;
+                    slot = -1;
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return segment < SEGMENTS;
+            }
+
+            @Override
+            public Pattern next() {
+                if (segment == SEGMENTS)
+                    throw new NoSuchElementException();
+                Pattern p = slots.values[slot];
+                advance();
+                return p;
+            }
+        };
+    }
+
+    /**
+     * Spliterator over the segments as published when it is created.
+     * It splits along segment boundaries and knows the exact size of
+     * every part, so parallel streams divide the work evenly.
+     */
+    @Override
+    public Spliterator<Pattern> spliterator() {
+        Slots[] snapshot = new Slots[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++)
+            snapshot[i] = segments[i].slots;
+        return new SegmentSpliterator(snapshot, 0, SEGMENTS);
+    }
+
+    /**
+     * Shape index over the current patterns, rebuilt on first use after a change.
+     * Concurrent readers may both rebuild; either result is correct.
+     */
+    public PatternIndex index() {
+        int version = modCount.get();
+        IndexSnapshot snapshot = shapeIndex;
+        if (snapshot == null || snapshot.version != version) {
+            snapshot = new IndexSnapshot(PatternIndex.build(values()), version);
+            shapeIndex = snapshot;
+        }
+        return snapshot.index;
+    }
+
+    /**
+     * Transducer over the current patterns, updated incrementally on each change.
+     */
+    public PatternAutomaton automaton() {
+        return automaton.get();
+    }
+
+    private static final class IndexSnapshot {
+        final PatternIndex index;
+        final int version;
+
+        IndexSnapshot(PatternIndex index, int version) {
+            this.index = index;
+            this.version = version;
+        }
+    }
+
+    private static final class SegmentSpliterator implements Spliterator<Pattern> {
+        private final Slots[] segments;
+        private int segment;
+        private final int end;
+        // Next slot to visit in segments[segment]
+        private int slot;
+        private long remaining;
+
+        SegmentSpliterator(Slots[] segments, int from, int end) {
+            this.segments = segments;
+            this.segment = from;
+            this.end = end;
+            for (int i = from; i < end; i++)
+                remaining += segments[i].count;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Pattern> action) {
+            for (; segment < end; segment++, slot = 0) {
+                Slots s = segments[segment];
+                while (slot < s.keys.length) {
+                    int i = slot++;
+                    if (s.keys[i] != null) {
+                        remaining--;
+                        action.accept(s.values[i]);
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Pattern> action) {
+            for (; segment < end; segment++, slot = 0) {
+                Slots s = segments[segment];
+                for (int i = slot; i < s.keys.length; i++)
+                    if (s.keys[i] != null)
+                        action.accept(s.values[i]);
+            }
+            remaining = 0;
+        }
+
+        /** Hands off the first half of the segments, if traversal has not started. */
+        @Override
+        public Spliterator<Pattern> trySplit() {
+            int mid = (segment + end) >>> 1;
+            if (slot != 0 || mid <= segment)
+                return null;
+            SegmentSpliterator prefix = new SegmentSpliterator(segments, segment, mid);
+            segment = mid;
+            remaining -= prefix.remaining;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return remaining;
+        }
+
+        @Override
+        public int characteristics() {
+            return SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+        }
+    }
+
+    /** Lock for writers plus the currently published slots. */
+    private static final class Segment {
+        volatile Slots slots;
+
+        Segment(Slots slots) {
+            this.slots = slots;
+        }
+    }
+
+    /**
+     * One open-addressing table. Mutated only while private to a writer,
+     * read-only once published.
+     */
+    private static final class Slots {
+        final String[] keys;
+        final Pattern[] values;
+        int count;
+
+        Slots(String[] keys, Pattern[] values, int count) {
+            this.keys = keys;
+            this.values = values;
+            this.count = count;
+        }
+
+        static Slots empty(int capacity) {
+            return new Slots(new String[capacity], new Pattern[capacity], 0);
+        }
+
+        Slots copy() {
+            return new Slots(keys.clone(), values.clone(), count);
+        }
+
+        /** Copy with room for one more entry, doubled once 3/4 full. */
+        Slots copyForInsert() {
+            return copyForInsert(1);
+        }
+
+        /** Copy with room for extra more entries, grown by doubling until under 3/4 full. */
+        Slots copyForInsert(int extra) {
+            int capacity = keys.length;
+            if (count + extra <= capacity - (capacity >>> 2))
+                return copy();
+            int grownCapacity = capacity;
+            while (count + extra > grownCapacity - (grownCapacity >>> 2))
+                grownCapacity <<= 1;
+            Slots grown = empty(grownCapacity);
+            for (int j = 0; j < capacity; j++)
+                if (keys[j] != null)
+                    grown.place(keys[j], hash(keys[j]), values[j]);
+            return grown;
+        }
+
+        void forEach(Consumer<? super Pattern> action) {
+            for (int i = 0; i < keys.length; i++)
+                if (keys[i] != null)
+                    action.accept(values[i]);
+        }
+
+        /** Slot holding key, or -1. */
+        int find(String key, int hash) {
+            int mask = keys.length - 1;
+            for (int i = hash & mask; keys[i] != null; i = (i + 1) & mask) {
+                if (keys[i].equals(key))
+                    return i;
+            }
+            return -1;
+        }
+
+        /** Stores key/value in the first free slot of its probe run. */
+        void place(String key, int hash, Pattern value) {
+            int mask = keys.length - 1;
+            int i = hash & mask;
+            while (keys[i] != null)
+                i = (i + 1) & mask;
+            keys[i] = key;
+            values[i] = value;
+            count++;
+        }
+
+        /** Empties slot i and shifts later entries of the run back into the gap. */
+        void removeAt(int i) {
+            int mask = keys.length - 1;
+            int gap = i;
+            for (int j = (i + 1) & mask; keys[j] != null; j = (j + 1) & mask) {
+                int home = hash(keys[j]) & mask;
+                // Move j into the gap unless its home lies cyclically in (gap, j]
+                boolean homeAfterGap = gap <= j ? (gap < home && home <= j) : (gap < home || home <= j);
+                if (!homeAfterGap) {
+                    keys[gap] = keys[j];
+                    values[gap] = values[j];
+                    gap = j;
+                }
+            }
+            keys[gap] = null;
+            values[gap] = null;
+            count--;
+        }
+    }
 }
@@ -1,25 +1,32 @@
 package org.morpho;
 
 
+import org.morpho.level.LexiconSnapshot;
+
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.*;
 
 public class Main {
     static AVLTree tree = new AVLTree();
     static AVLNode rootNode = tree.root;
     static HashTable patterns = new HashTable();
+    static DerivationCache cache = DerivationCache.shared();
+    static EditJournal journal;
 
     public static void loadRoots() {
         try (BufferedReader br = new BufferedReader(
                 new InputStreamReader(new FileInputStream("src/main/data/roots.txt"), StandardCharsets.UTF_8))) {
+            List<RootData> roots = new ArrayList<>();
             String line;
             while ((line = br.readLine()) != null) {
                 String trimmedLine = line.trim();
                 if (!trimmedLine.isEmpty()) { // Skip empty lines
-                    rootNode = tree.insert(rootNode, new RootData(trimmedLine));
+                    roots.add(new RootData(trimmedLine));
                 }
             }
+            rootNode = tree.build(roots);
             System.out.println("Roots loaded successfully.");
         } catch (FileNotFoundException e) {
             System.err.println("ERROR: Roots file not found");
@@ -32,9 +39,34 @@ public class Main {
         }
     }
 
+    /** Replays the console edits of earlier runs, then records new ones. */
+    public static void openJournal() {
+        try {
+            journal = new EditJournal(Paths.get("src/main/data/journal/console.journal"));
+            journal.replay((op, key, template) -> {
+                switch (op) {
+                    case ADD_ROOT -> rootNode = tree.insert(rootNode, new RootData(key));
+                    case REMOVE_ROOT -> rootNode = tree.delete(rootNode, Normalizer.DEFAULT.normalize(key));
+                    case PUT_PATTERN -> patterns.insert(key, new Pattern(key, template));
+                    case REMOVE_PATTERN -> patterns.deletePattern(key);
+                    default -> { }
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("ERROR: Cannot open edit journal: " + e.getMessage());
+            journal = null;
+        }
+    }
+
+    static void record(EditJournal.Op op, String key, List<String> template) {
+        if (journal != null)
+            journal.append(op, key, template);
+    }
+
     public static void loadPatterns() {
         try (BufferedReader br = new BufferedReader(
                 new InputStreamReader(new FileInputStream("src/main/data/patterns.txt"), StandardCharsets.UTF_8))) {
+            Map<String, Pattern> loaded = new LinkedHashMap<>();
             String line;
             while ((line = br.readLine()) != null) {
                 String trimmedLine = line.trim();
@@ -53,11 +85,9 @@ public class Main {
                     continue;
                 }
 
-                patterns.addPattern(
-                        patternName,
-                        new Pattern(patternName, Arrays.asList(templateParts))
-                );
+                loaded.put(patternName, new Pattern(patternName, Arrays.asList(templateParts)));
             }
+            patterns.putAll(loaded);
             System.out.println("✓ Patterns loaded successfully.");
         } catch (FileNotFoundException e) {
             System.err.println("ERROR: Patterns file not found");
@@ -84,19 +114,22 @@ public class Main {
             switch (c) {
                 case "1" -> {
                     System.out.print("Nouvelle racine: ");
-                    String r = sc.nextLine();
-                    rootNode = tree.insert(rootNode, new RootData(r));
+                    RootData d = new RootData(sc.nextLine());
+                    if (tree.search(rootNode, d.normalized) == null)
+                        rootNode = tree.insert(rootNode, d);
+                    record(EditJournal.Op.ADD_ROOT, d.root, Collections.emptyList());
                     System.out.println("Racine ajoutée.");
                 }
                 case "2" -> {
                     System.out.print("Racine à supprimer: ");
-                    String r = sc.nextLine();
+                    String r = Normalizer.DEFAULT.normalize(sc.nextLine());
                     rootNode = tree.delete(rootNode, r);
+                    record(EditJournal.Op.REMOVE_ROOT, r, Collections.emptyList());
                     System.out.println("Suppression terminée.");
                 }
                 case "3" -> {
                     System.out.print("Racine à rechercher: ");
-                    String r = sc.nextLine();
+                    String r = Normalizer.DEFAULT.normalize(sc.nextLine());
 
                     RootData d = tree.search(rootNode, r);
                     if (d != null)
@@ -133,6 +166,7 @@ public class Main {
                     List<String> forms = Arrays.asList(sc.nextLine().split(" "));
 
                     patterns.insert(name, new Pattern(name, forms));
+                    record(EditJournal.Op.PUT_PATTERN, name, forms);
                     System.out.println("Schème ajouté.");
                 }
                 case "2" -> {
@@ -143,6 +177,7 @@ public class Main {
                     List<String> forms = Arrays.asList(sc.nextLine().split(" "));
 
                     boolean ok = patterns.updatePattern(name, new Pattern(name, forms));
+                    if (ok) record(EditJournal.Op.PUT_PATTERN, name, forms);
 
                     if (ok) System.out.println("Schème modifié.");
                     else System.out.println("Schème introuvable.");
@@ -152,14 +187,13 @@ public class Main {
                     String name = sc.nextLine();
 
                     boolean ok = patterns.deletePattern(name);
+                    if (ok) record(EditJournal.Op.REMOVE_PATTERN, name, Collections.emptyList());
 
                     if (ok) System.out.println("Schème supprimé.");
                     else System.out.println("Schème introuvable.");
                 }
                 case "4" -> {
-                    for (Pattern p : patterns.values()) {
-                        System.out.println(p.name + " -> " + p.template);
-                    }
+                    patterns.forEach(p -> System.out.println(p.name + " -> " + p.template));
                 }
                 case "0" -> {
                     return;
@@ -170,8 +204,21 @@ public class Main {
 
 
     public static void main(String[] args) {
-        loadRoots();
-        loadPatterns();
+        LexiconSnapshot snapshot = LexiconSnapshot.open("src/main/data/roots.txt", "src/main/data/patterns.txt");
+        if (snapshot != null) {
+            List<RootData> roots = new ArrayList<>();
+            for (String root : snapshot.roots.list())
+                roots.add(new RootData(root));
+            rootNode = tree.build(roots);
+            Map<String, Pattern> loaded = new LinkedHashMap<>();
+            for (Pattern p : snapshot.patterns)
+                loaded.put(p.name, p);
+            patterns.putAll(loaded);
+        } else {
+            loadRoots();
+            loadPatterns();
+        }
+        openJournal();
 
         Scanner sc = new Scanner(System.in, StandardCharsets.UTF_8);
 
@@ -183,6 +230,8 @@ public class Main {
             System.out.println("3. Générer dérivés");
             System.out.println("4. Valider mot");
             System.out.println("5. Générer mot spécifique");
+            System.out.println("6. Analyser mot (racine inconnue)");
+            System.out.println("7. Statistiques du cache");
             System.out.println("0. Quitter");
 
             String c = sc.nextLine();
@@ -196,31 +245,33 @@ public class Main {
                     break;
                 case "3": {
                     System.out.print("Racine: ");
-                    String r = sc.nextLine();
-                    RootData d = tree.search(rootNode, r);
+                    RootData typed = new RootData(sc.nextLine());
+                    RootData d = tree.search(rootNode, typed.normalized);
 
                     if (d == null) {
                         System.out.println("Racine introuvable. Ajouter ? (o/n)");
                         String rep = sc.nextLine();
 
                         if (rep.equalsIgnoreCase("o")) {
-                            rootNode = tree.insert(rootNode, new RootData(r));
-                            d = tree.search(rootNode, r);
+                            rootNode = tree.insert(rootNode, typed);
+                            record(EditJournal.Op.ADD_ROOT, typed.root, Collections.emptyList());
+                            d = typed;
                             System.out.println("Racine ajoutée.");
                         }
                     }
+                    // Generate with the stored spelling, hamza included
+                    String r = d != null ? d.root : typed.root;
 
-                    for (Pattern p : patterns.values()) {
-                        if (d != null && d.derivatives.containsKey(p.name)) {
-                            String w = d.derivatives.get(p.name);
-                            if(w == null) continue;
+                    for (Pattern p : patterns) {
+                        String w = cache.get(r, p);
+                        if (w != null) {
                             System.out.println(r + " + " + p.name + " → "
                                     + w + " (déjà existant)");
                         }
                         else {
-                            String w = MorphEngine.generateWord(r, p);
+                            w = MorphEngine.generateWord(r, p);
                             if(w == null) continue;
-                            if (d != null) d.derivatives.put(p.name, w);
+                            if (d != null) cache.put(r, p, w);
 
                             System.out.println(r + " + " + p.name + " → "
                                     + w + " (généré)");
@@ -233,7 +284,7 @@ public class Main {
                     System.out.print("Mot: ");
                     String w = sc.nextLine();
                     System.out.print("Racine: ");
-                    String r = sc.nextLine();
+                    String r = Normalizer.DEFAULT.normalize(sc.nextLine());
 
                     String p = MorphEngine.validate(w, r, patterns);
                     if (p != null) {
@@ -246,18 +297,12 @@ public class Main {
                 }
                 case "5": {
                     System.out.print("Racine: ");
-                    String r = sc.nextLine();
+                    RootData typed = new RootData(sc.nextLine());
 
                     System.out.print("Nom du schème: ");
                     String pname = sc.nextLine();
 
-                    Pattern selected = null;
-                    for (Pattern p : patterns.values()) {
-                        if (p.name.equals(pname)) {
-                            selected = p;
-                            break;
-                        }
-                    }
+                    Pattern selected = patterns.get(pname);
 
                     if (selected == null) {
                         System.out.println("Schème introuvable.");
@@ -265,7 +310,8 @@ public class Main {
                     }
 
 
-                    RootData d = tree.search(rootNode, r);
+                    RootData d = tree.search(rootNode, typed.normalized);
+                    String r = d != null ? d.root : typed.root;
 
                     if (d == null) {
                         String w = MorphEngine.generateWord(r, selected);
@@ -275,26 +321,49 @@ public class Main {
                         String rep = sc.nextLine();
 
                         if (rep.equalsIgnoreCase("o")) {
-                            rootNode = tree.insert(rootNode, new RootData(r));
-                            d = tree.search(rootNode, r);
-                            d.derivatives.put(selected.name, w);
+                            rootNode = tree.insert(rootNode, typed);
+                            record(EditJournal.Op.ADD_ROOT, r, Collections.emptyList());
+                            if (w != null) cache.put(r, selected, w);
                             System.out.println("Racine ajoutée.");
                         }
                     }
                     else{
-                        if (d.derivatives.containsKey(selected.name)) {
-                            System.out.println("Mot existant: "
-                                    + d.derivatives.get(selected.name));
+                        String w = cache.get(r, selected);
+                        if (w != null) {
+                            System.out.println("Mot existant: " + w);
                         } else {
-                            String w = MorphEngine.generateWord(r, selected);
-                            d.derivatives.put(selected.name, w);
+                            w = MorphEngine.generateWord(r, selected);
+                            if (w != null) cache.put(r, selected, w);
                             System.out.println("Mot généré: " + w);
                         }
                     }
                     break;
                 }
+                case "6": {
+                    System.out.print("Mot: ");
+                    String w = sc.nextLine();
+
+                    List<Analysis> analyses = MorphEngine.analyze(w, patterns, tree, rootNode);
+                    if (analyses.isEmpty()) {
+                        System.out.println("Aucune analyse trouvée.");
+                    }
+                    for (Analysis a : analyses) {
+                        System.out.println(w + " ← " + a);
+                    }
+                    break;
+                }
 
+                case "7":
+                    System.out.println(cache);
+                    break;
                 case "0":
+                    if (journal != null) {
+                        try {
+                            journal.close();
+                        } catch (IOException e) {
+                            System.err.println("ERROR: Cannot close edit journal: " + e.getMessage());
+                        }
+                    }
                     break label;
             }
         }
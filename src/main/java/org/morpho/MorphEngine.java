@@ -1,97 +1,135 @@
 package org.morpho;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
 
 public class MorphEngine {
 
+    // Per-thread scratch for the normalized word and root
+    private static final ThreadLocal<Normalizer.Buffer[]> BUFFERS =
+            ThreadLocal.withInitial(() -> new Normalizer.Buffer[] {new Normalizer.Buffer(32), new Normalizer.Buffer(8)});
+
     public static String generateWord(String root, Pattern pattern) {
-        int patternSize = pattern.verifyPattern(pattern);
-        if (root.length() != patternSize)
+        if (root.length() != pattern.arity)
             return null;
 
-        Map<String, Character> map = new HashMap<>();
-        map.put("ف", root.charAt(0));
-        map.put("ع", root.charAt(1));
-        map.put("ل", root.charAt(2));
-
-        if (root.length() == 4)
-            map.put("ل2", root.charAt(3));
-
-        StringBuilder result = new StringBuilder();
-        int lCounter = 0;
-        for (String s : pattern.template) {
-            if (s.equals("ل") && root.length() == 4) {
-                lCounter++;
-                if (lCounter == 1)
-                    result.append(map.get("ل"));
-                else
-                    result.append(map.get("ل2"));
-            } else {
-                result.append(map.getOrDefault(s, s.charAt(0)));
-            }
-        }
-        return result.toString();
+        char[] buffer = new char[pattern.length()];
+        int n = generateWord(root, pattern, buffer, 0);
+        return new String(buffer, 0, n);
     }
 
-    public static String validate(String word, String root, HashTable table) {
-        for (Pattern p : table.values()) {
-            int patternSize = p.verifyPattern(p);
-            if (p.template.size() != word.length() || patternSize != root.length())
-                continue;
-
-            Map<String, Character> extracted = new HashMap<>();
-            boolean ok = true;
-
-            int lCounter = 0;
-
-            for (int i = 0; i < p.template.size(); i++) {
-                String t = p.template.get(i);
-                char w = word.charAt(i);
+    /**
+     * Writes the word derived from root into out starting at offset,
+     * without allocating. Returns the number of letters written, at most
+     * pattern.length(), or -1 if the root does not have the pattern's arity.
+     * A weak root that meets one of the pattern's rules is written with
+     * that rule's template.
+     */
+    public static int generateWord(CharSequence root, Pattern pattern, char[] out, int offset) {
+        if (root.length() != pattern.arity)
+            return -1;
+        if (pattern.variants.length != 0)
+            pattern = pattern.programFor(root);
+
+        char[] literals = pattern.literals;
+        int[] slots = pattern.slots;
+        for (int i = 0; i < slots.length; i++) {
+            int slot = slots[i];
+            out[offset + i] = slot == Pattern.LITERAL ? literals[i] : root.charAt(slot);
+        }
+        return slots.length;
+    }
 
-                if (t.equals("ف") || t.equals("ع")) {
-                    extracted.put(t, w);
-                } else if (t.equals("ل")) {
-                    lCounter++;
-                    if (lCounter == 1)
-                        extracted.put("ل", w);
-                    else
-                        extracted.put("ل2", w);
+    /** Length of the word derived from root, or -1 if the root does not fit. */
+    public static int wordLength(CharSequence root, Pattern pattern) {
+        if (root.length() != pattern.arity)
+            return -1;
+        return pattern.variants.length == 0 ? pattern.length() : pattern.programFor(root).length();
+    }
 
-                } else if (t.charAt(0) != w) {
-                    ok = false;
-                    break;
-                }
-            }
+    /**
+     * Name of the pattern that derives word from root, or null. Both are
+     * normalized first, so harakat, tatweel, hamza seats and shadda in the
+     * input do not matter.
+     * A weak root is checked against the form its rules give, not the
+     * plain template: قائل validates against قول, قاول does not.
+     */
+    public static String validate(String word, String root, HashTable table) {
+        Normalizer.Buffer[] buffers = BUFFERS.get();
+        Normalizer.Buffer w = Normalizer.DEFAULT.normalize(word, buffers[0]);
+        Normalizer.Buffer r = Normalizer.DEFAULT.normalize(root, buffers[1]);
+        PatternIndex index = table.index();
+        // Every plain match is tried before the weak forms, in case a rule rejects only the first
+        Pattern p = index.match(w, r, MorphEngine::takesPlainForm);
+        if (p != null)
+            return p.name;
+        p = matchWeak(w, r, index);
+        return p == null ? null : p.name;
+    }
 
-            if (!ok)
+    /**
+     * First pattern whose weak-root rewrite for root gives word. Only reached
+     * when the plain match fails, and only tries the patterns that have rules.
+     */
+    private static Pattern matchWeak(CharSequence word, CharSequence root, PatternIndex index) {
+        for (Pattern p : index.weak(root.length())) {
+            Pattern v = p.programFor(root);
+            if (v == p || v.displayOnly || v.length() != word.length())
                 continue;
+            if (sameLetters(v, word, root))
+                return p;
+        }
+        return null;
+    }
+
+    /** False if one of p's rules rewrites the letters of root: its plain form is wrong. */
+    private static boolean takesPlainForm(Pattern p, CharSequence root) {
+        if (p.variants.length == 0)
+            return true;
+        Pattern program = p.programFor(root);
+        return program == p || program.displayOnly;
+    }
 
-            if (root.length() == 3) {
-                String r = ""
-                        + extracted.get("ف")
-                        + extracted.get("ع")
-                        + extracted.get("ل");
-
-                if (r.equals(root))
-                    return p.name;
-            }
-
-            if (root.length() == 4) {
-                if (!extracted.containsKey("ل2"))
-                    continue;
-
-                String r =
-                        "" + extracted.get("ف")
-                                + extracted.get("ع")
-                                + extracted.get("ل")
-                                + extracted.get("ل2");
-
-                if (r.equals(root))
-                    return p.name;
-            }
+    private static boolean sameLetters(Pattern v, CharSequence word, CharSequence root) {
+        int[] slots = v.slots;
+        for (int i = 0; i < slots.length; i++) {
+            char expected = slots[i] == Pattern.LITERAL ? v.matchLiterals[i] : root.charAt(slots[i]);
+            if (word.charAt(i) != expected)
+                return false;
         }
+        return true;
+    }
 
-        return null;
+    /**
+     * Finds every (root, pattern) pair that produces word, without being told
+     * the root. The word makes one pass through the table's pattern
+     * automaton, which emits each matching pattern with its radicals; each
+     * root is then looked up in the tree, and attested analyses come first.
+     */
+    public static List<Analysis> analyze(String word, HashTable table, AVLTree tree, AVLNode rootNode) {
+        return analyze(word, table, root -> tree.search(rootNode, root) != null);
+    }
+
+    /**
+     * Same as above against any root store; isAttested tells which
+     * candidate roots exist.
+     */
+    public static List<Analysis> analyze(String word, HashTable table, Predicate<String> isAttested) {
+        List<Analysis> attested = new ArrayList<>();
+        List<Analysis> unattested = new ArrayList<>();
+
+        PatternAutomaton automaton = table.automaton();
+        Normalizer.Buffer normalized = Normalizer.DEFAULT.normalize(word, BUFFERS.get()[0]);
+        automaton.run(normalized, new char[automaton.maxArity()], (p, radicals) -> {
+            String root = new String(radicals, 0, p.arity);
+            if (isAttested.test(root))
+                attested.add(new Analysis(root, p, true));
+            else
+                unattested.add(new Analysis(root, p, false));
+        });
+
+        attested.addAll(unattested);
+        return attested;
     }
-}
\ No newline at end of file
+}
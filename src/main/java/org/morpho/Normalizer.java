@@ -0,0 +1,183 @@
+package org.morpho;
+
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Folds the spelling variants students type onto one form before matching.
+ *
+ * Every char of the Arabic block maps through one table entry: kept,
+ * replaced by another char, dropped, or (shadda) replaced by a copy of the
+ * previous letter. Normalizing is a single pass of table lookups into a
+ * reusable {@link Buffer}; nothing else is allocated.
+ *
+ * Which variants are folded is chosen with {@link Rule}s. {@link #DEFAULT}
+ * takes them from the "morpho.normalize" system property, a comma-separated
+ * list of rule names or "none" (default: all of them).
+ *
+ * Only the forms used for matching are normalized. Pattern names and
+ * template letters keep their spelling for display and generation; see
+ * {@link Pattern#matchLiterals}.
+ */
+public final class Normalizer {
+
+    public enum Rule {
+        /** Drop short vowels, tanwin, sukun and superscript alef. */
+        HARAKAT,
+        /** Drop tatweel (kashida). */
+        TATWEEL,
+        /** Write أ إ آ ٱ as ا, ؤ as و and ئ as ي. */
+        HAMZA,
+        /** Write a doubled letter out twice: فعّال → فععال. */
+        SHADDA
+    }
+
+    /** {@link #map} result for a char that is left out. */
+    public static final int DROP = -1;
+    /** {@link #map} result for a char that repeats the previous letter. */
+    public static final int REPEAT = -2;
+
+    private static final char BLOCK = '\u0600';
+    private static final char SHADDA_MARK = '\u0651';
+
+    public static final Normalizer DEFAULT = new Normalizer(rulesFrom(System.getProperty("morpho.normalize")));
+    /**
+     * {@link #DEFAULT} without {@link Rule#HAMZA}: drops the marks but keeps
+     * every letter as written, so the result has one letter per letter of
+     * the DEFAULT form.
+     */
+    public static final Normalizer SPELLING = DEFAULT.without(Rule.HAMZA);
+
+    // Entry per char of U+0600..U+06FF
+    private final int[] table = new int[256];
+    private final Set<Rule> rules;
+
+    public Normalizer(Set<Rule> rules) {
+        this.rules = rules.isEmpty() ? EnumSet.noneOf(Rule.class) : EnumSet.copyOf(rules);
+        for (int i = 0; i < table.length; i++)
+            table[i] = BLOCK + i;
+
+        if (this.rules.contains(Rule.HARAKAT)) {
+            for (char c = '\u064B'; c <= '\u065F'; c++)
+                table[c - BLOCK] = DROP;
+            table['\u0670' - BLOCK] = DROP;
+        }
+        if (this.rules.contains(Rule.TATWEEL))
+            table['\u0640' - BLOCK] = DROP;
+        if (this.rules.contains(Rule.HAMZA)) {
+            table['آ' - BLOCK] = 'ا';
+            table['أ' - BLOCK] = 'ا';
+            table['إ' - BLOCK] = 'ا';
+            table['ٱ' - BLOCK] = 'ا';
+            table['ؤ' - BLOCK] = 'و';
+            table['ئ' - BLOCK] = 'ي';
+        }
+        // Shadda falls in the harakat range; without SHADDA it is dropped with them
+        if (this.rules.contains(Rule.SHADDA))
+            table[SHADDA_MARK - BLOCK] = REPEAT;
+    }
+
+    public Set<Rule> rules() {
+        return EnumSet.copyOf(rules);
+    }
+
+    /** Normalizer with the same rules except rule. */
+    public Normalizer without(Rule rule) {
+        Set<Rule> fewer = rules();
+        fewer.remove(rule);
+        return new Normalizer(fewer);
+    }
+
+    /** Replacement char for c, or {@link #DROP} or {@link #REPEAT}. */
+    public int map(char c) {
+        int i = c - BLOCK;
+        return i >= 0 && i < table.length ? table[i] : c;
+    }
+
+    /** Normal form of text written into out, which is cleared first. Returns out. */
+    public Buffer normalize(CharSequence text, Buffer out) {
+        out.length = 0;
+        out.ensureCapacity(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            int m = map(text.charAt(i));
+            if (m >= 0) {
+                out.chars[out.length++] = (char) m;
+            } else if (m == REPEAT && out.length > 0) {
+                out.chars[out.length] = out.chars[out.length - 1];
+                out.length++;
+            }
+        }
+        return out;
+    }
+
+    /** Normal form of text; text itself when it is already normal. */
+    public String normalize(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (map(c) != c)
+                return normalize(text, new Buffer(text.length())).toString();
+        }
+        return text;
+    }
+
+    /** Letter c matches once normalized, or c itself if the rules drop it. */
+    public char fold(char c) {
+        int m = map(c);
+        return m >= 0 ? (char) m : c;
+    }
+
+    static Set<Rule> rulesFrom(String spec) {
+        if (spec == null || spec.isBlank())
+            return EnumSet.allOf(Rule.class);
+        Set<Rule> rules = EnumSet.noneOf(Rule.class);
+        for (String name : spec.split(",")) {
+            name = name.trim();
+            if (name.isEmpty() || name.equalsIgnoreCase("none"))
+                continue;
+            try {
+                rules.add(Rule.valueOf(name.toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                System.err.println("⚠ Unknown normalization rule ignored: " + name);
+            }
+        }
+        return rules;
+    }
+
+    /** Growable char buffer, reused across calls to avoid allocating per word. */
+    public static final class Buffer implements CharSequence {
+        char[] chars;
+        int length;
+
+        public Buffer(int capacity) {
+            this.chars = new char[Math.max(capacity, 16)];
+        }
+
+        void ensureCapacity(int capacity) {
+            if (chars.length < capacity)
+                chars = new char[Math.max(capacity, chars.length * 2)];
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index >= length)
+                throw new IndexOutOfBoundsException(index);
+            return chars[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(chars, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, 0, length);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package org.morpho;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Immutable ordered set of {@link RootCodec} codes.
+ *
+ * The codes are stored sorted in chunks of primitive longs, with the first
+ * code of every chunk in a separate array to pick the chunk by binary
+ * search. There is no node or String per root: a root costs its 8 bytes
+ * plus a share of the chunk headers, and lookups compare machine words.
+ *
+ * Updates return a new set that copies the chunk directory and the one
+ * chunk that changed and shares all the others, so, like
+ * {@link PersistentAVLTree}, keeping a version is an O(1) snapshot.
+ */
+public final class PackedRootSet {
+    // Chunks are built this full and split when they reach twice this
+    private static final int CHUNK = 256;
+
+    public static final PackedRootSet EMPTY = new PackedRootSet(new long[0], new long[0][], 0);
+
+    private final long[] firsts;
+    private final long[][] chunks;
+    private final int size;
+
+    private PackedRootSet(long[] firsts, long[][] chunks, int size) {
+        this.firsts = firsts;
+        this.chunks = chunks;
+        this.size = size;
+    }
+
+    /** Set of codes given in any order; duplicates are dropped. Sorts a copy. */
+    public static PackedRootSet of(long[] codes, int count) {
+        long[] sorted = Arrays.copyOf(codes, count);
+        Arrays.sort(sorted);
+        int unique = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (unique == 0 || sorted[unique - 1] != sorted[i])
+                sorted[unique++] = sorted[i];
+        }
+        return ofSorted(sorted, unique);
+    }
+
+    /**
+     * Set of the first count codes of sorted, which must be ascending and
+     * distinct, as {@link #forEach} visits them; this is not checked.
+     */
+    public static PackedRootSet ofSorted(long[] sorted, int count) {
+        int chunkCount = (count + CHUNK - 1) / CHUNK;
+        long[] firsts = new long[chunkCount];
+        long[][] chunks = new long[chunkCount][];
+        for (int c = 0; c < chunkCount; c++) {
+            chunks[c] = Arrays.copyOfRange(sorted, c * CHUNK, Math.min(count, (c + 1) * CHUNK));
+            firsts[c] = chunks[c][0];
+        }
+        return new PackedRootSet(firsts, chunks, count);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(long code) {
+        int c = chunkFor(code);
+        return c >= 0 && Arrays.binarySearch(chunks[c], code) >= 0;
+    }
+
+    /** Set that also holds code, or this set if it already does. */
+    public PackedRootSet add(long code) {
+        if (chunks.length == 0)
+            return new PackedRootSet(new long[] {code}, new long[][] {{code}}, 1);
+
+        int c = Math.max(chunkFor(code), 0);
+        long[] chunk = chunks[c];
+        int i = Arrays.binarySearch(chunk, code);
+        if (i >= 0)
+            return this;
+        i = -i - 1;
+
+        long[] grown = new long[chunk.length + 1];
+        System.arraycopy(chunk, 0, grown, 0, i);
+        grown[i] = code;
+        System.arraycopy(chunk, i, grown, i + 1, chunk.length - i);
+
+        if (grown.length < 2 * CHUNK)
+            return replace(c, grown);
+        // Full: split in two halves
+        long[][] newChunks = new long[chunks.length + 1][];
+        long[] newFirsts = new long[firsts.length + 1];
+        System.arraycopy(chunks, 0, newChunks, 0, c);
+        System.arraycopy(firsts, 0, newFirsts, 0, c);
+        newChunks[c] = Arrays.copyOfRange(grown, 0, CHUNK);
+        newChunks[c + 1] = Arrays.copyOfRange(grown, CHUNK, grown.length);
+        newFirsts[c] = newChunks[c][0];
+        newFirsts[c + 1] = newChunks[c + 1][0];
+        System.arraycopy(chunks, c + 1, newChunks, c + 2, chunks.length - c - 1);
+        System.arraycopy(firsts, c + 1, newFirsts, c + 2, firsts.length - c - 1);
+        return new PackedRootSet(newFirsts, newChunks, size + 1);
+    }
+
+    /** Set without code, or this set if it does not hold it. */
+    public PackedRootSet remove(long code) {
+        int c = chunkFor(code);
+        if (c < 0)
+            return this;
+        long[] chunk = chunks[c];
+        int i = Arrays.binarySearch(chunk, code);
+        if (i < 0)
+            return this;
+
+        if (chunk.length > 1) {
+            long[] shrunk = new long[chunk.length - 1];
+            System.arraycopy(chunk, 0, shrunk, 0, i);
+            System.arraycopy(chunk, i + 1, shrunk, i, chunk.length - i - 1);
+            return replace(c, shrunk);
+        }
+        // Last code of its chunk: drop the chunk
+        long[][] newChunks = new long[chunks.length - 1][];
+        long[] newFirsts = new long[firsts.length - 1];
+        System.arraycopy(chunks, 0, newChunks, 0, c);
+        System.arraycopy(firsts, 0, newFirsts, 0, c);
+        System.arraycopy(chunks, c + 1, newChunks, c, chunks.length - c - 1);
+        System.arraycopy(firsts, c + 1, newFirsts, c, firsts.length - c - 1);
+        return new PackedRootSet(newFirsts, newChunks, size - 1);
+    }
+
+    /**
+     * Visits the codes in [from, to] in ascending order.
+     */
+    public void forEachInRange(long from, long to, LongConsumer action) {
+        int c = Math.max(chunkFor(from), 0);
+        for (; c < chunks.length; c++) {
+            long[] chunk = chunks[c];
+            int i = Arrays.binarySearch(chunk, from);
+            for (i = i < 0 ? -i - 1 : i; i < chunk.length; i++) {
+                if (chunk[i] > to)
+                    return;
+                action.accept(chunk[i]);
+            }
+        }
+    }
+
+    /** Visits every code in ascending order. */
+    public void forEach(LongConsumer action) {
+        for (long[] chunk : chunks) {
+            for (long code : chunk)
+                action.accept(code);
+        }
+    }
+
+    /** Last chunk whose first code is at most code, or -1. */
+    private int chunkFor(long code) {
+        int i = Arrays.binarySearch(firsts, code);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    /** Same set with chunk c replaced by chunk, which may be one code longer or shorter. */
+    private PackedRootSet replace(int c, long[] chunk) {
+        long[][] newChunks = chunks.clone();
+        newChunks[c] = chunk;
+        long[] newFirsts = firsts;
+        if (firsts[c] != chunk[0]) {
+            newFirsts = firsts.clone();
+            newFirsts[c] = chunk[0];
+        }
+        return new PackedRootSet(newFirsts, newChunks, size + (chunk.length - chunks[c].length));
+    }
+}
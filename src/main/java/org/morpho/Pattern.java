@@ -1,38 +1,161 @@
 package org.morpho;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Pattern {
+    /** Slot marker in {@link #slots} for cells that copy a literal letter. */
+    public static final int LITERAL = -1;
+
+    static final Pattern[] NO_VARIANTS = new Pattern[0];
+
+    private static final AtomicInteger NEXT_ORDINAL = new AtomicInteger();
+
     public String name;
     public List<String> template;
+    /** name as {@link Normalizer#DEFAULT} writes it, to look a pattern up by what a student typed. */
+    public final String normalizedName;
+
+    /**
+     * Id unique per Pattern object, so an edited pattern never hits the
+     * cached words of the one it replaced. Every pattern, variant and
+     * reload draws from one process-wide counter, so ids are not dense:
+     * key maps by it, never size an array by it.
+     */
+    public final int ordinal = NEXT_ORDINAL.getAndIncrement();
 
+    /**
+     * Compiled slot program, built once from the template.
+     * literals[i] holds the letter written at cell i when slots[i] == LITERAL,
+     * otherwise slots[i] is the index of the root radical written there
+     * (ف → 0, ع → 1, first ل → 2, every further ل → 3, 4, ...).
+     */
+    public final char[] literals;
+    public final int[] slots;
+    /**
+     * literals as they compare against a normalized word. Generation writes
+     * {@link #literals}; matching reads these.
+     */
+    public final char[] matchLiterals;
+
+    /** Number of radicals the pattern expects, or 0 if it lacks ف, ع or ل. */
+    public final int arity;
+
+    /**
+     * Weak-root rewrites of this pattern, compiled from {@link WeakRules};
+     * the first whose conditions a root meets replaces the template.
+     * Empty for most patterns, and always for a variant.
+     */
+    public final Pattern[] variants;
+    /** For a variant, the pattern it rewrites; null otherwise. */
+    public final Pattern variantOf;
+    /** For a variant: true if it only changes how the word is written, so matching skips it. */
+    public final boolean displayOnly;
+    // For a variant, per radical of variantOf: allowed RootCodec letter codes as a bitmask (0: any)
+    // and the radical it must repeat (-1: none)
+    private final long[] allowed;
+    private final int[] sameAs;
+
+    /** Pattern with the weak-root rules of {@link WeakRules#defaults()}. */
     public Pattern(String name, List<String> template) {
+        this(name, template, WeakRules.defaults());
+    }
+
+    public Pattern(String name, List<String> template, WeakRules rules) {
+        this(name, template, rules, null, null, null, false);
+    }
+
+    /** Variant of base using template when the root meets allowed and sameAs. */
+    Pattern(Pattern base, List<String> template, long[] allowed, int[] sameAs, boolean displayOnly) {
+        this(base.name, template, WeakRules.EMPTY, base, allowed, sameAs, displayOnly);
+    }
+
+    private Pattern(String name, List<String> template, WeakRules rules, Pattern variantOf,
+                    long[] allowed, int[] sameAs, boolean displayOnly) {
         this.name = name;
+        this.variantOf = variantOf;
+        this.allowed = allowed;
+        this.sameAs = sameAs;
+        this.displayOnly = displayOnly;
         this.template = template;
-    }
-    public int verifyPattern(Pattern pattern) {
+        this.normalizedName = Normalizer.DEFAULT.normalize(name);
+
+        int size = template.size();
+        this.literals = new char[size];
+        this.matchLiterals = new char[size];
+        this.slots = new int[size];
+
         boolean hasF = false;
         boolean hasAin = false;
-        boolean hasLam = false;
         int lCounter = 0;
 
-        for (String s : pattern.template) {
-            if (s.equals("ف")) hasF = true;
-            if (s.equals("ع")) hasAin = true;
-            if (s.equals("ل")) {
-                hasLam = true;
+        for (int i = 0; i < size; i++) {
+            String s = template.get(i);
+            if (s.equals("ف")) {
+                hasF = true;
+                slots[i] = 0;
+            } else if (s.equals("ع")) {
+                hasAin = true;
+                slots[i] = 1;
+            } else if (s.equals("ل")) {
+                slots[i] = 2 + lCounter;
                 lCounter++;
+            } else {
+                slots[i] = LITERAL;
+                literals[i] = s.isEmpty() ? ' ' : s.charAt(0);
+                matchLiterals[i] = Normalizer.DEFAULT.fold(literals[i]);
             }
         }
 
-        if (hasF && hasAin && hasLam) {
-            if (lCounter >= 2)
-                return 4;
-            return 3;
+        this.arity = (hasF && hasAin && lCounter > 0) ? 2 + lCounter : 0;
+        // Last: the rules read name, template and arity
+        this.variants = rules.isEmpty() ? NO_VARIANTS : rules.variantsOf(this);
+    }
+
+    public int verifyPattern(Pattern pattern) {
+        return pattern.arity;
+    }
+
+    /** Number of letters in a word produced by this pattern. */
+    public int length() {
+        return slots.length;
+    }
+
+    /**
+     * Program that derives a word from root: the first variant whose
+     * conditions root meets, or this pattern.
+     */
+    public Pattern programFor(CharSequence root) {
+        for (Pattern v : variants) {
+            if (v.accepts(root))
+                return v;
         }
-        else{
-            return 0;
+        return this;
+    }
+
+    /**
+     * For a variant: true if root meets its conditions. Letters are compared
+     * normalized, so a root may keep its hamza spelling.
+     */
+    boolean accepts(CharSequence root) {
+        Normalizer n = Normalizer.DEFAULT;
+        for (int i = 0; i < allowed.length; i++) {
+            long mask = allowed[i];
+            if (mask != 0 && ((mask >>> RootCodec.letterCode(n.fold(root.charAt(i)))) & 1) == 0)
+                return false;
+            if (sameAs[i] >= 0 && n.fold(root.charAt(i)) != n.fold(root.charAt(sameAs[i])))
+                return false;
         }
+        return true;
+    }
+
+    /** For a variant: allowed letter codes of radical i as a bitmask, 0 for any. */
+    long allowed(int i) {
+        return allowed[i];
+    }
 
+    /** For a variant: the radical that radical i must repeat, or -1. */
+    int sameAs(int i) {
+        return sameAs[i];
     }
-}
\ No newline at end of file
+}
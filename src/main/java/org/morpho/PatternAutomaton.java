@@ -0,0 +1,389 @@
+package org.morpho;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * All patterns of a table compiled into one finite-state transducer.
+ *
+ * The patterns are first merged into a trie whose edges are either a
+ * literal letter or a radical slot (ف, ع, ل, ...). A slot edge accepts any
+ * letter and emits it as that radical. The trie is determinized lazily:
+ * each deterministic state is the set of trie nodes alive after a prefix,
+ * and its transitions are computed the first time a letter is seen and
+ * then cached. Analyzing a word is therefore a single left-to-right pass
+ * of cached lookups, after which the final state lists every pattern that
+ * matched; their radicals are the letters read on the slot edges.
+ *
+ * Weak-root variants of a pattern ({@link WeakRules}) are merged into the
+ * same trie and report the pattern they rewrite, with the radicals the
+ * surface form dropped filled back in from the rule's conditions.
+ *
+ * Instances are immutable: {@link #with} and {@link #without} copy only
+ * the trie path of the changed pattern and share everything else, so a
+ * teacher edit costs one template length, not a full recompile.
+ *
+ * Safe for concurrent readers. Two threads that discover the same
+ * transition at once may both compute it; the state table keeps one.
+ */
+public class PatternAutomaton {
+
+    /** Receives each match; radicals[0 .. pattern.arity) is only valid during the call. */
+    public interface MatchHandler {
+        void onMatch(Pattern pattern, char[] radicals);
+    }
+
+    private static final AtomicInteger NEXT_NODE_ID = new AtomicInteger();
+
+    public static final PatternAutomaton EMPTY = new PatternAutomaton(Node.EMPTY, 0);
+
+    private final Node trie;
+    private final int maxArity;
+    private final DState start;
+    private final DState dead;
+    private final Map<List<Node>, DState> states = new ConcurrentHashMap<>();
+
+    private PatternAutomaton(Node trie, int maxArity) {
+        this.trie = trie;
+        this.maxArity = maxArity;
+        this.dead = new DState(new Node[0]);
+        this.start = new DState(new Node[]{trie});
+    }
+
+    /** Returns an automaton that also recognizes p, and the weak-root forms of its rules. */
+    public PatternAutomaton with(Pattern p) {
+        if (p.arity == 0)
+            return this;
+        Node updated = insert(trie, p, 0);
+        for (Pattern v : p.variants) {
+            if (!v.displayOnly)
+                updated = insert(updated, v, 0);
+        }
+        return new PatternAutomaton(updated, Math.max(maxArity, p.arity));
+    }
+
+    /** Returns an automaton that no longer recognizes p. */
+    public PatternAutomaton without(Pattern p) {
+        if (p.arity == 0)
+            return this;
+        Node updated = remove(trie, p, 0);
+        for (Pattern v : p.variants) {
+            if (!v.displayOnly && updated != null)
+                updated = remove(updated, v, 0);
+        }
+        if (updated == trie)
+            return this;
+        return new PatternAutomaton(updated == null ? Node.EMPTY : updated, maxArity);
+    }
+
+    /** Upper bound on the radicals buffer needed by {@link #run}. */
+    public int maxArity() {
+        return maxArity;
+    }
+
+    /**
+     * Runs word through the automaton in one pass and reports every pattern
+     * that produces it, with the captured radicals written to radicals.
+     * Literals are compared in their {@link Normalizer} form, so word should
+     * be normalized too.
+     */
+    public void run(CharSequence word, char[] radicals, MatchHandler handler) {
+        DState state = start;
+        for (int i = 0; i < word.length(); i++) {
+            state = step(state, word.charAt(i));
+            if (state == dead)
+                return;
+        }
+
+        for (Pattern p : state.accepts) {
+            if (!capture(p, word, radicals))
+                continue;
+            if (p.variantOf != null)
+                restore(p, radicals, 0, handler);
+            else if (p.variants.length == 0 || takesPlainForm(p, radicals))
+                handler.onMatch(p, radicals);
+        }
+    }
+
+    /** False if one of p's rules rewrites the letters of the root in radicals: its plain form is wrong. */
+    private static boolean takesPlainForm(Pattern p, char[] radicals) {
+        Pattern program = p.programFor(CharBuffer.wrap(radicals, 0, p.arity));
+        return program == p || program.displayOnly;
+    }
+
+    /**
+     * Fills the radicals a weak-root variant leaves out of the word, from
+     * its conditions (a repeated radical, or each letter it allows), and
+     * reports the pattern it rewrites for every root that really takes
+     * this variant.
+     */
+    private static void restore(Pattern v, char[] radicals, int i, MatchHandler handler) {
+        Pattern base = v.variantOf;
+        if (i == base.arity) {
+            if (base.programFor(CharBuffer.wrap(radicals, 0, base.arity)) == v)
+                handler.onMatch(base, radicals);
+            return;
+        }
+        if (captures(v, i)) {
+            restore(v, radicals, i + 1, handler);
+        } else if (v.sameAs(i) >= 0 && captures(v, v.sameAs(i))) {
+            radicals[i] = radicals[v.sameAs(i)];
+            restore(v, radicals, i + 1, handler);
+        } else {
+            for (long m = v.allowed(i); m != 0; m &= m - 1) {
+                radicals[i] = RootCodec.letter(Long.numberOfTrailingZeros(m));
+                restore(v, radicals, i + 1, handler);
+            }
+        }
+    }
+
+    /** True if some cell of v reads radical i from the word. */
+    private static boolean captures(Pattern v, int radical) {
+        for (int slot : v.slots) {
+            if (slot == radical)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads radicals off the slot cells. Repeated slots must agree, which a
+     * deterministic pass over independent slot edges cannot enforce by itself.
+     */
+    private static boolean capture(Pattern p, CharSequence word, char[] radicals) {
+        int[] slots = p.slots;
+        int filled = 0;
+        for (int i = 0; i < slots.length; i++) {
+            int slot = slots[i];
+            if (slot == Pattern.LITERAL)
+                continue;
+            char c = word.charAt(i);
+            int bit = 1 << slot;
+            if ((filled & bit) != 0) {
+                if (radicals[slot] != c)
+                    return false;
+            } else {
+                radicals[slot] = c;
+                filled |= bit;
+            }
+        }
+        return true;
+    }
+
+    // ==================== DETERMINIZATION ====================
+
+    private DState step(DState state, char c) {
+        DState next = state.cached(c);
+        if (next != null)
+            return next;
+
+        List<Node> targets = new ArrayList<>();
+        for (Node n : state.nodes) {
+            Node literal = n.literal(c);
+            if (literal != null && !targets.contains(literal))
+                targets.add(literal);
+            for (Node slot : n.slotNext) {
+                if (slot != null && !targets.contains(slot))
+                    targets.add(slot);
+            }
+        }
+
+        if (targets.isEmpty()) {
+            next = dead;
+        } else {
+            targets.sort((a, b) -> Integer.compare(a.id, b.id));
+            next = states.computeIfAbsent(targets, k -> new DState(k.toArray(new Node[0])));
+        }
+        state.cache(c, next);
+        return next;
+    }
+
+    /** A set of trie nodes reached after some prefix, with its cached transitions. */
+    private static final class DState {
+        private static final int ARABIC_BLOCK = 0x0600;
+
+        final Node[] nodes;
+        final Pattern[] accepts;
+        // Transitions for the Arabic block, indexed by c - 0x0600.
+        // Filled racily by readers: a lost write only means recomputing a step.
+        private volatile DState[] arabic;
+        private volatile Map<Character, DState> other;
+
+        DState(Node[] nodes) {
+            this.nodes = nodes;
+            List<Pattern> acc = new ArrayList<>();
+            for (Node n : nodes)
+                acc.addAll(Arrays.asList(n.accepts));
+            this.accepts = acc.toArray(new Pattern[0]);
+        }
+
+        DState cached(char c) {
+            int k = c - ARABIC_BLOCK;
+            if (k >= 0 && k < 256) {
+                DState[] table = arabic;
+                return table == null ? null : table[k];
+            }
+            Map<Character, DState> map = other;
+            return map == null ? null : map.get(c);
+        }
+
+        void cache(char c, DState next) {
+            int k = c - ARABIC_BLOCK;
+            if (k >= 0 && k < 256) {
+                DState[] table = arabic;
+                if (table == null) {
+                    table = new DState[256];
+                    arabic = table;
+                }
+                table[k] = next;
+            } else {
+                Map<Character, DState> map = other;
+                if (map == null) {
+                    map = new ConcurrentHashMap<>();
+                    other = map;
+                }
+                map.put(c, next);
+            }
+        }
+    }
+
+    // ==================== TRIE ====================
+
+    private static Node insert(Node node, Pattern p, int i) {
+        if (i == p.length())
+            return node.withAccept(p);
+
+        int slot = p.slots[i];
+        if (slot == Pattern.LITERAL) {
+            char c = p.matchLiterals[i];
+            Node child = node.literal(c);
+            return node.withLiteral(c, insert(child == null ? Node.EMPTY : child, p, i + 1));
+        }
+        Node child = slot < node.slotNext.length ? node.slotNext[slot] : null;
+        return node.withSlot(slot, insert(child == null ? Node.EMPTY : child, p, i + 1));
+    }
+
+    /** Returns the node without p, null if nothing is left under it. */
+    private static Node remove(Node node, Pattern p, int i) {
+        Node updated;
+        if (i == p.length()) {
+            updated = node.withoutAccept(p);
+        } else {
+            int slot = p.slots[i];
+            if (slot == Pattern.LITERAL) {
+                char c = p.matchLiterals[i];
+                Node child = node.literal(c);
+                if (child == null)
+                    return node;
+                Node newChild = remove(child, p, i + 1);
+                if (newChild == child)
+                    return node;
+                updated = node.withLiteral(c, newChild);
+            } else {
+                Node child = slot < node.slotNext.length ? node.slotNext[slot] : null;
+                if (child == null)
+                    return node;
+                Node newChild = remove(child, p, i + 1);
+                if (newChild == child)
+                    return node;
+                updated = node.withSlot(slot, newChild);
+            }
+        }
+        if (updated == node)
+            return node;
+        return updated.isEmpty() ? null : updated;
+    }
+
+    /** Immutable trie node; every "with" method returns a copy. */
+    private static final class Node {
+        static final Node EMPTY = new Node(new char[0], new Node[0], new Node[0], new Pattern[0]);
+
+        final int id = NEXT_NODE_ID.getAndIncrement();
+        final char[] keys;
+        final Node[] literalNext;
+        final Node[] slotNext;
+        final Pattern[] accepts;
+
+        Node(char[] keys, Node[] literalNext, Node[] slotNext, Pattern[] accepts) {
+            this.keys = keys;
+            this.literalNext = literalNext;
+            this.slotNext = slotNext;
+            this.accepts = accepts;
+        }
+
+        Node literal(char c) {
+            int k = Arrays.binarySearch(keys, c);
+            return k >= 0 ? literalNext[k] : null;
+        }
+
+        boolean isEmpty() {
+            if (keys.length > 0 || accepts.length > 0)
+                return false;
+            for (Node n : slotNext)
+                if (n != null)
+                    return false;
+            return true;
+        }
+
+        Node withAccept(Pattern p) {
+            Pattern[] acc = Arrays.copyOf(accepts, accepts.length + 1);
+            acc[accepts.length] = p;
+            return new Node(keys, literalNext, slotNext, acc);
+        }
+
+        Node withoutAccept(Pattern p) {
+            for (int k = 0; k < accepts.length; k++) {
+                if (accepts[k] == p) {
+                    Pattern[] acc = new Pattern[accepts.length - 1];
+                    System.arraycopy(accepts, 0, acc, 0, k);
+                    System.arraycopy(accepts, k + 1, acc, k, acc.length - k);
+                    return new Node(keys, literalNext, slotNext, acc);
+                }
+            }
+            return this;
+        }
+
+        /** Sets (or with null, drops) the literal edge for c. */
+        Node withLiteral(char c, Node child) {
+            int k = Arrays.binarySearch(keys, c);
+            if (k >= 0) {
+                if (child != null) {
+                    Node[] next = literalNext.clone();
+                    next[k] = child;
+                    return new Node(keys, next, slotNext, accepts);
+                }
+                char[] newKeys = new char[keys.length - 1];
+                Node[] next = new Node[keys.length - 1];
+                System.arraycopy(keys, 0, newKeys, 0, k);
+                System.arraycopy(keys, k + 1, newKeys, k, newKeys.length - k);
+                System.arraycopy(literalNext, 0, next, 0, k);
+                System.arraycopy(literalNext, k + 1, next, k, next.length - k);
+                return new Node(newKeys, next, slotNext, accepts);
+            }
+            if (child == null)
+                return this;
+            int at = -k - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] next = new Node[keys.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, at);
+            System.arraycopy(literalNext, 0, next, 0, at);
+            newKeys[at] = c;
+            next[at] = child;
+            System.arraycopy(keys, at, newKeys, at + 1, keys.length - at);
+            System.arraycopy(literalNext, at, next, at + 1, keys.length - at);
+            return new Node(newKeys, next, slotNext, accepts);
+        }
+
+        /** Sets (or with null, drops) the edge for radical slot. */
+        Node withSlot(int slot, Node child) {
+            Node[] next = Arrays.copyOf(slotNext, Math.max(slotNext.length, slot + 1));
+            next[slot] = child;
+            return new Node(keys, literalNext, next, accepts);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package org.morpho;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiPredicate;
+
+/**
+ * Shape index over a set of patterns.
+ * Patterns are bucketed by (word length, root arity). Inside a bucket every
+ * pattern owns one bit, and each position keeps a bitset of the patterns
+ * that accept a radical there plus one bitset per literal letter seen there.
+ * ANDing those bitsets along a word leaves only the patterns whose literals
+ * all line up, before any radical is compared.
+ * Patterns with weak-root rules are also listed by arity, so a word whose
+ * plain form matches nothing is only retried against those.
+ */
+public class PatternIndex {
+
+    private static final Pattern[] NONE = new Pattern[0];
+
+    private final Bucket[][] buckets;
+    // Per arity: the patterns with weak-root variants, in list order
+    private final Pattern[][] weakByArity;
+
+    private PatternIndex(Bucket[][] buckets, Pattern[][] weakByArity) {
+        this.buckets = buckets;
+        this.weakByArity = weakByArity;
+    }
+
+    /**
+     * Builds an index over patterns. Bit order inside each bucket follows
+     * the list order, so lookups report patterns in that order.
+     */
+    public static PatternIndex build(List<Pattern> patterns) {
+        int maxLength = 0;
+        int maxArity = 0;
+        for (Pattern p : patterns) {
+            maxLength = Math.max(maxLength, p.length());
+            maxArity = Math.max(maxArity, p.arity);
+        }
+
+        // Shape (len, arity) at len * (maxArity + 1) + arity; null until a pattern has it
+        int arities = maxArity + 1;
+        List<List<Pattern>> groups = new ArrayList<>(Collections.nCopies((maxLength + 1) * arities, null));
+        for (Pattern p : patterns) {
+            if (p.arity == 0)
+                continue;
+            int shape = p.length() * arities + p.arity;
+            if (groups.get(shape) == null)
+                groups.set(shape, new ArrayList<>());
+            groups.get(shape).add(p);
+        }
+
+        Bucket[][] buckets = new Bucket[maxLength + 1][arities];
+        for (int len = 0; len <= maxLength; len++)
+            for (int arity = 0; arity <= maxArity; arity++) {
+                List<Pattern> group = groups.get(len * arities + arity);
+                if (group != null)
+                    buckets[len][arity] = new Bucket(group, len);
+            }
+
+        Pattern[][] weakByArity = new Pattern[maxArity + 1][];
+        for (int arity = 0; arity <= maxArity; arity++) {
+            List<Pattern> weak = new ArrayList<>();
+            for (Pattern p : patterns) {
+                if (p.arity == arity && p.variants.length != 0)
+                    weak.add(p);
+            }
+            weakByArity[arity] = weak.isEmpty() ? NONE : weak.toArray(NONE);
+        }
+
+        return new PatternIndex(buckets, weakByArity);
+    }
+
+    /** Patterns with weak-root rules that take a root of this length, in list order; often none. */
+    public Pattern[] weak(int arity) {
+        return arity < weakByArity.length ? weakByArity[arity] : NONE;
+    }
+
+    /**
+     * Returns the first pattern that derives word from root, or null.
+     */
+    public Pattern match(CharSequence word, CharSequence root) {
+        return match(word, root, (p, r) -> true);
+    }
+
+    /**
+     * Returns the first pattern that derives word from root and that accept
+     * takes for root, or null. A pattern accept turns down does not hide
+     * the ones after it.
+     */
+    public Pattern match(CharSequence word, CharSequence root, BiPredicate<Pattern, CharSequence> accept) {
+        Bucket bucket = bucket(word.length(), root.length());
+        if (bucket == null)
+            return null;
+
+        for (int w = 0; w < bucket.words; w++) {
+            long candidates = bucket.candidates(word, w);
+            while (candidates != 0) {
+                Pattern p = bucket.patterns[(w << 6) + Long.numberOfTrailingZeros(candidates)];
+                if (radicalsMatch(p, word, root) && accept.test(p, root))
+                    return p;
+                candidates &= candidates - 1;
+            }
+        }
+        return null;
+    }
+
+    private Bucket bucket(int length, int arity) {
+        if (length >= buckets.length || arity >= buckets[length].length)
+            return null;
+        return buckets[length][arity];
+    }
+
+    private static boolean radicalsMatch(Pattern p, CharSequence word, CharSequence root) {
+        int[] slots = p.slots;
+        for (int i = 0; i < slots.length; i++) {
+            int slot = slots[i];
+            if (slot != Pattern.LITERAL && word.charAt(i) != root.charAt(slot))
+                return false;
+        }
+        return true;
+    }
+
+    /** Patterns sharing one (length, arity) shape. */
+    private static final class Bucket {
+        final Pattern[] patterns;
+        final int words;
+        // Per position: patterns with a radical slot there
+        final long[][] slotMasks;
+        // Per position: sorted literal letters and the patterns using each
+        final char[][] literalKeys;
+        final long[][][] literalMasks;
+
+        Bucket(List<Pattern> group, int length) {
+            this.patterns = group.toArray(new Pattern[0]);
+            this.words = (patterns.length + 63) >>> 6;
+            this.slotMasks = new long[length][words];
+            this.literalKeys = new char[length][];
+            this.literalMasks = new long[length][][];
+
+            for (int i = 0; i < length; i++) {
+                char[] keys = new char[patterns.length];
+                int distinct = 0;
+                for (Pattern p : patterns) {
+                    if (p.slots[i] == Pattern.LITERAL)
+                        keys[distinct++] = p.matchLiterals[i];
+                }
+                Arrays.sort(keys, 0, distinct);
+                int unique = 0;
+                for (int k = 0; k < distinct; k++) {
+                    if (unique == 0 || keys[unique - 1] != keys[k])
+                        keys[unique++] = keys[k];
+                }
+                literalKeys[i] = Arrays.copyOf(keys, unique);
+                literalMasks[i] = new long[unique][words];
+
+                for (int b = 0; b < patterns.length; b++) {
+                    Pattern p = patterns[b];
+                    long bit = 1L << (b & 63);
+                    if (p.slots[i] == Pattern.LITERAL) {
+                        int k = Arrays.binarySearch(literalKeys[i], p.matchLiterals[i]);
+                        literalMasks[i][k][b >>> 6] |= bit;
+                    } else {
+                        slotMasks[i][b >>> 6] |= bit;
+                    }
+                }
+            }
+        }
+
+        /** Patterns in word w of the bitset whose literals all match. */
+        long candidates(CharSequence word, int w) {
+            long result = -1L;
+            for (int i = 0; i < slotMasks.length && result != 0; i++) {
+                long allowed = slotMasks[i][w];
+                int k = Arrays.binarySearch(literalKeys[i], word.charAt(i));
+                if (k >= 0)
+                    allowed |= literalMasks[i][k][w];
+                result &= allowed;
+            }
+            return result;
+        }
+    }
+}
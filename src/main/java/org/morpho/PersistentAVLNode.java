@@ -0,0 +1,21 @@
+package org.morpho;
+
+/**
+ * Immutable AVL node. Updates never modify a node; they copy the path
+ * from the root to the change and share every other subtree.
+ */
+public final class PersistentAVLNode {
+    public final RootData data;
+    public final PersistentAVLNode left;
+    public final PersistentAVLNode right;
+    public final int height;
+    public final int size;
+
+    public PersistentAVLNode(RootData data, PersistentAVLNode left, PersistentAVLNode right) {
+        this.data = data;
+        this.left = left;
+        this.right = right;
+        this.height = 1 + Math.max(left == null ? 0 : left.height, right == null ? 0 : right.height);
+        this.size = 1 + (left == null ? 0 : left.size) + (right == null ? 0 : right.size);
+    }
+}
@@ -0,0 +1,151 @@
+package org.morpho;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Path-copying variant of {@link AVLTree}.
+ * Every update returns a new root and leaves the old one untouched, so
+ * holding on to a root is an O(1) snapshot and two versions share all
+ * nodes outside the O(log n) paths where they differ. Keys are the roots'
+ * {@link RootData#normalized} forms, and are unique.
+ */
+public class PersistentAVLTree {
+
+    /** Returns a root that also holds data, or node itself if the root is already present. */
+    public static PersistentAVLNode insert(PersistentAVLNode node, RootData data) {
+        if (node == null)
+            return new PersistentAVLNode(data, null, null);
+
+        int cmp = data.normalized.compareTo(node.data.normalized);
+        if (cmp == 0)
+            return node;
+
+        if (cmp < 0) {
+            PersistentAVLNode left = insert(node.left, data);
+            if (left == node.left)
+                return node;
+            return balance(node.data, left, node.right);
+        }
+        PersistentAVLNode right = insert(node.right, data);
+        if (right == node.right)
+            return node;
+        return balance(node.data, node.left, right);
+    }
+
+    /** Returns a root without the root whose normal form is rootValue, or node itself if it was absent. */
+    public static PersistentAVLNode delete(PersistentAVLNode node, String rootValue) {
+        if (node == null)
+            return null;
+
+        int cmp = rootValue.compareTo(node.data.normalized);
+        if (cmp < 0) {
+            PersistentAVLNode left = delete(node.left, rootValue);
+            if (left == node.left)
+                return node;
+            return balance(node.data, left, node.right);
+        }
+        if (cmp > 0) {
+            PersistentAVLNode right = delete(node.right, rootValue);
+            if (right == node.right)
+                return node;
+            return balance(node.data, node.left, right);
+        }
+
+        if (node.left == null)
+            return node.right;
+        if (node.right == null)
+            return node.left;
+
+        PersistentAVLNode successor = node.right;
+        while (successor.left != null)
+            successor = successor.left;
+        return balance(successor.data, node.left, delete(node.right, successor.data.normalized));
+    }
+
+    public static RootData search(PersistentAVLNode node, String rootValue) {
+        while (node != null) {
+            int cmp = rootValue.compareTo(node.data.normalized);
+            if (cmp == 0)
+                return node.data;
+            node = cmp < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    /** Appends the data under node to out, in ascending order of normal form. */
+    public static void collect(PersistentAVLNode node, List<RootData> out) {
+        if (node != null) {
+            collect(node.left, out);
+            out.add(node.data);
+            collect(node.right, out);
+        }
+    }
+
+    public static int size(PersistentAVLNode node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * Bulk-loads roots in any order: sorts them only if needed, drops
+     * duplicates, then builds a balanced tree in linear time.
+     */
+    public static PersistentAVLNode build(List<RootData> roots) {
+        List<RootData> sorted = new ArrayList<>(roots);
+        boolean inOrder = true;
+        for (int i = 1; i < sorted.size() && inOrder; i++)
+            inOrder = sorted.get(i - 1).normalized.compareTo(sorted.get(i).normalized) <= 0;
+        if (!inOrder)
+            sorted.sort((a, b) -> a.normalized.compareTo(b.normalized));
+
+        int unique = 0;
+        for (RootData d : sorted) {
+            if (unique == 0 || !sorted.get(unique - 1).normalized.equals(d.normalized))
+                sorted.set(unique++, d);
+        }
+        return build(sorted, 0, unique - 1);
+    }
+
+    private static PersistentAVLNode build(List<RootData> sorted, int lo, int hi) {
+        if (lo > hi)
+            return null;
+        int mid = (lo + hi) >>> 1;
+        return new PersistentAVLNode(sorted.get(mid), build(sorted, lo, mid - 1), build(sorted, mid + 1, hi));
+    }
+
+    private static int height(PersistentAVLNode node) {
+        return node == null ? 0 : node.height;
+    }
+
+    /** Creates a node over left and right, rotating if they differ in height by two. */
+    private static PersistentAVLNode balance(RootData data, PersistentAVLNode left, PersistentAVLNode right) {
+        int balance = height(left) - height(right);
+
+        // Left heavy
+        if (balance > 1) {
+            if (height(left.left) < height(left.right)) {
+                PersistentAVLNode lr = left.right;
+                return new PersistentAVLNode(lr.data,
+                        new PersistentAVLNode(left.data, left.left, lr.left),
+                        new PersistentAVLNode(data, lr.right, right));
+            }
+            return new PersistentAVLNode(left.data, left.left,
+                    new PersistentAVLNode(data, left.right, right));
+        }
+
+        // Right heavy
+        if (balance < -1) {
+            if (height(right.right) < height(right.left)) {
+                PersistentAVLNode rl = right.left;
+                return new PersistentAVLNode(rl.data,
+                        new PersistentAVLNode(data, left, rl.left),
+                        new PersistentAVLNode(right.data, rl.right, right.right));
+            }
+            return new PersistentAVLNode(right.data,
+                    new PersistentAVLNode(data, left, right.left),
+                    right.right);
+        }
+
+        return new PersistentAVLNode(data, left, right);
+    }
+}
@@ -0,0 +1,83 @@
+package org.morpho;
+
+/**
+ * Packs a root into one long, 6 bits per letter.
+ *
+ * Letters U+0621..U+064A (the Arabic letters with every hamza seat) get
+ * codes 1..42 in Unicode order, written from the most significant end and
+ * padded with zeros, so comparing two codes as longs gives the same order
+ * as {@link String#compareTo} on the roots: a shorter root sorts before
+ * any root it is a prefix of, because 0 is below every letter code.
+ *
+ * Up to {@value #MAX_LETTERS} letters fit. Roots that are longer or use
+ * other characters have no code ({@link #NONE}) and must be kept as Strings.
+ */
+public final class RootCodec {
+    public static final long NONE = -1L;
+    public static final int MAX_LETTERS = 10;
+
+    private static final int BITS = 6;
+    private static final char FIRST = 'ء';
+    private static final char LAST = 'ي';
+    private static final int MASK = (1 << BITS) - 1;
+
+    private RootCodec() {
+    }
+
+    /** Code of root, or {@link #NONE}. */
+    public static long encode(CharSequence root) {
+        int n = root.length();
+        if (n > MAX_LETTERS)
+            return NONE;
+        long code = 0;
+        for (int i = 0; i < n; i++) {
+            char c = root.charAt(i);
+            if (c < FIRST || c > LAST)
+                return NONE;
+            code |= (long) (c - FIRST + 1) << shift(i);
+        }
+        return code;
+    }
+
+    public static String decode(long code) {
+        char[] letters = new char[MAX_LETTERS];
+        int n = 0;
+        while (n < MAX_LETTERS) {
+            int letter = (int) (code >>> shift(n)) & MASK;
+            if (letter == 0)
+                break;
+            letters[n++] = (char) (FIRST + letter - 1);
+        }
+        return new String(letters, 0, n);
+    }
+
+    /** Code of one letter, 1..42, or 0 if it has none. */
+    public static int letterCode(char c) {
+        return c < FIRST || c > LAST ? 0 : c - FIRST + 1;
+    }
+
+    /** Letter of a code from {@link #letterCode}. */
+    public static char letter(int code) {
+        return (char) (FIRST + code - 1);
+    }
+
+    public static int length(long code) {
+        int n = 0;
+        while (n < MAX_LETTERS && ((code >>> shift(n)) & MASK) != 0)
+            n++;
+        return n;
+    }
+
+    /**
+     * Largest code starting with the root coded prefix: every root with
+     * that prefix lies in [prefix, prefixEnd(prefix)].
+     */
+    public static long prefixEnd(long prefix) {
+        int n = length(prefix);
+        return n == MAX_LETTERS ? prefix : prefix | ((1L << shift(n - 1)) - 1);
+    }
+
+    private static int shift(int index) {
+        return BITS * (MAX_LETTERS - 1 - index);
+    }
+}
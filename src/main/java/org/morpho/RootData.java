@@ -1,14 +1,13 @@
 package org.morpho;
 
-import java.util.HashMap;
-import java.util.Map;
-
 public class RootData {
+    // Spelling shown and written into patterns: hamza kept, marks dropped (Normalizer.SPELLING)
     public String root;
-    public Map<String, String> derivatives;
+    // Normalizer.DEFAULT form of root, which every lookup matches on
+    public String normalized;
 
     public RootData(String root) {
-        this.root = root;
-        this.derivatives = new HashMap<>();
+        this.root = Normalizer.SPELLING.normalize(root);
+        this.normalized = Normalizer.DEFAULT.normalize(this.root);
     }
 }
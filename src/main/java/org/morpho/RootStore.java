@@ -0,0 +1,299 @@
+package org.morpho;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Thread-safe ordered root store.
+ * Roots keep their spelling ({@link RootData#root}) and are looked up by
+ * their normal form, so اكل finds أكل; roots whose spellings normalize the
+ * same are one root.
+ * Roots already in normal form are kept as {@link RootCodec} codes in a
+ * {@link PackedRootSet}, so lookups and range scans compare longs and a
+ * root takes a few bytes; the rarer root with a hamza, or with no code
+ * (too long, or not Arabic letters), goes with its spelling to a
+ * {@link PersistentAVLTree} beside it.
+ * Readers take the current version with one volatile read and never lock
+ * or block, and writers build a new version that shares everything it did
+ * not change and publish it with a CAS, retrying if another writer got
+ * there first. Every read sees one consistent version, and
+ * {@link #snapshot()} is O(1).
+ */
+public class RootStore {
+    private final AtomicReference<Version> current;
+    // Set once by freeze(); edits then throw
+    private volatile boolean frozen;
+
+    public RootStore() {
+        this.current = new AtomicReference<>(Version.EMPTY);
+    }
+
+    private RootStore(Version version) {
+        this.current = new AtomicReference<>(version);
+    }
+
+    /**
+     * Adds every root, keeping one of any that normalize the same.
+     * An empty store is bulk-built in one sort.
+     */
+    public void loadAll(List<RootData> data) {
+        checkEditable();
+        Version empty = current.get();
+        if (empty == Version.EMPTY && current.compareAndSet(empty, Version.build(data)))
+            return;
+        for (RootData d : data)
+            add(d.root);
+    }
+
+    /** Adds root if no root of the same normal form is present, and returns the data stored. */
+    public RootData add(String root) {
+        checkEditable();
+        RootData data = new RootData(root);
+        while (true) {
+            Version v = current.get();
+            Version updated = v.add(data);
+            if (updated == v)
+                return v.find(data.normalized);
+            if (current.compareAndSet(v, updated))
+                return data;
+        }
+    }
+
+    /**
+     * Removes and adds the given roots as one change: readers see either
+     * none of it or all of it.
+     */
+    public void apply(Collection<String> added, Collection<String> removed) {
+        checkEditable();
+        while (true) {
+            Version v = current.get();
+            Version updated = v;
+            for (String root : removed)
+                updated = updated.remove(Normalizer.DEFAULT.normalize(root));
+            for (String root : added)
+                updated = updated.add(new RootData(root));
+            if (updated == v || current.compareAndSet(v, updated))
+                return;
+        }
+    }
+
+    /** Removes the root of the same normal form as root. */
+    public boolean remove(String root) {
+        checkEditable();
+        String normalized = Normalizer.DEFAULT.normalize(root);
+        while (true) {
+            Version v = current.get();
+            Version updated = v.remove(normalized);
+            if (updated == v)
+                return false;
+            if (current.compareAndSet(v, updated))
+                return true;
+        }
+    }
+
+    /**
+     * Makes this store read-only, for sharing: edits then throw
+     * UnsupportedOperationException, while {@link #snapshot()} still gives
+     * an editable copy.
+     * @return This store
+     */
+    public RootStore freeze() {
+        frozen = true;
+        return this;
+    }
+
+    private void checkEditable() {
+        if (frozen)
+            throw new UnsupportedOperationException("Read-only root store: edit a snapshot()");
+    }
+
+    /** Stored data of the root of the same normal form as root, or null if absent. */
+    public RootData search(String root) {
+        return current.get().find(Normalizer.DEFAULT.normalize(root));
+    }
+
+    public boolean contains(String root) {
+        String normalized = Normalizer.DEFAULT.normalize(root);
+        Version v = current.get();
+        long code = RootCodec.encode(normalized);
+        if (code != RootCodec.NONE && v.packed.contains(code))
+            return true;
+        return PersistentAVLTree.search(v.others, normalized) != null;
+    }
+
+    /** Spellings of the roots in ascending order, all from the same version. */
+    public List<String> list() {
+        Version v = current.get();
+        List<String> roots = new ArrayList<>(v.size());
+        v.packed.forEach(code -> roots.add(RootCodec.decode(code)));
+        return merge(roots, v.others, null);
+    }
+
+    /**
+     * Spellings of the roots whose normal form starts with that of prefix,
+     * in ascending order, all from the same version.
+     */
+    public List<String> withPrefix(String prefix) {
+        prefix = Normalizer.DEFAULT.normalize(prefix);
+        Version v = current.get();
+        List<String> roots = new ArrayList<>();
+        long from = RootCodec.encode(prefix);
+        if (from != RootCodec.NONE)
+            v.packed.forEachInRange(from, RootCodec.prefixEnd(from), code -> roots.add(RootCodec.decode(code)));
+        return merge(roots, v.others, prefix);
+    }
+
+    public int size() {
+        return current.get().size();
+    }
+
+    /**
+     * Independent store that starts from this store's current version.
+     * Both share every chunk and node until one of them is edited.
+     */
+    public RootStore snapshot() {
+        return new RootStore(current.get());
+    }
+
+    /**
+     * Writes the current version as it is kept: the packed codes in order,
+     * then the spellings of the other roots in normal-form order (strings
+     * as an int length plus UTF-16 chars). {@link #readFrom} rebuilds it
+     * without sorting or encoding a root; only those other roots, few and
+     * already in order, are normalized again into their RootData.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        Version v = current.get();
+        long[] codes = new long[v.packed.size()];
+        int[] n = {0};
+        v.packed.forEach(code -> codes[n[0]++] = code);
+        out.writeInt(codes.length);
+        for (long code : codes)
+            out.writeLong(code);
+        List<RootData> others = new ArrayList<>();
+        PersistentAVLTree.collect(v.others, others);
+        out.writeInt(others.size());
+        for (RootData d : others) {
+            out.writeInt(d.root.length());
+            out.writeChars(d.root);
+        }
+    }
+
+    /** Reads back what {@link #writeTo} wrote; the codes in one bulk copy. */
+    public static RootStore readFrom(ByteBuffer in) {
+        long[] codes = new long[in.getInt()];
+        in.asLongBuffer().get(codes);
+        in.position(in.position() + codes.length * Long.BYTES);
+        int count = in.getInt();
+        List<RootData> others = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            char[] chars = new char[in.getInt()];
+            in.asCharBuffer().get(chars);
+            in.position(in.position() + chars.length * Character.BYTES);
+            others.add(new RootData(new String(chars)));
+        }
+        PersistentAVLNode tree = others.isEmpty() ? null : PersistentAVLTree.build(others);
+        return new RootStore(new Version(PackedRootSet.ofSorted(codes, codes.length), tree));
+    }
+
+    /**
+     * Merges the spellings under others (only those whose normal form starts
+     * with prefix, if given) into sorted.
+     */
+    private static List<String> merge(List<String> sorted, PersistentAVLNode others, String prefix) {
+        if (others == null)
+            return sorted;
+        List<RootData> data = new ArrayList<>();
+        PersistentAVLTree.collect(others, data);
+        List<String> extra = new ArrayList<>(data.size());
+        for (RootData d : data) {
+            if (prefix == null || d.normalized.startsWith(prefix))
+                extra.add(d.root);
+        }
+        // The tree is in normal-form order; a hamza can move a spelling elsewhere
+        extra.sort(null);
+        List<String> merged = new ArrayList<>(sorted.size() + extra.size());
+        int i = 0, j = 0;
+        while (i < sorted.size() || j < extra.size()) {
+            if (j == extra.size() || (i < sorted.size() && sorted.get(i).compareTo(extra.get(j)) < 0))
+                merged.add(sorted.get(i++));
+            else
+                merged.add(extra.get(j++));
+        }
+        return merged;
+    }
+
+    /** Packed roots plus the others (hamza spellings, or no code); never modified. */
+    private static final class Version {
+        static final Version EMPTY = new Version(PackedRootSet.EMPTY, null);
+
+        final PackedRootSet packed;
+        final PersistentAVLNode others;
+
+        Version(PackedRootSet packed, PersistentAVLNode others) {
+            this.packed = packed;
+            this.others = others;
+        }
+
+        static Version build(List<RootData> data) {
+            long[] codes = new long[data.size()];
+            int n = 0;
+            List<RootData> rest = new ArrayList<>();
+            for (RootData d : data) {
+                long code = packable(d);
+                if (code != RootCodec.NONE)
+                    codes[n++] = code;
+                else
+                    rest.add(d);
+            }
+            PackedRootSet packed = PackedRootSet.of(codes, n);
+            // A hamza spelling whose normal form is packed too is the same root
+            rest.removeIf(d -> {
+                long code = RootCodec.encode(d.normalized);
+                return code != RootCodec.NONE && packed.contains(code);
+            });
+            return new Version(packed, rest.isEmpty() ? null : PersistentAVLTree.build(rest));
+        }
+
+        /** Code of a root kept packed: one whose spelling is its normal form. */
+        static long packable(RootData d) {
+            return d.root.equals(d.normalized) ? RootCodec.encode(d.root) : RootCodec.NONE;
+        }
+
+        RootData find(String normalized) {
+            long code = RootCodec.encode(normalized);
+            if (code != RootCodec.NONE && packed.contains(code))
+                return new RootData(normalized);
+            return PersistentAVLTree.search(others, normalized);
+        }
+
+        Version add(RootData data) {
+            if (find(data.normalized) != null)
+                return this;
+            long code = packable(data);
+            if (code != RootCodec.NONE)
+                return new Version(packed.add(code), others);
+            return new Version(packed, PersistentAVLTree.insert(others, data));
+        }
+
+        Version remove(String normalized) {
+            long code = RootCodec.encode(normalized);
+            if (code != RootCodec.NONE) {
+                PackedRootSet updated = packed.remove(code);
+                if (updated != packed)
+                    return new Version(updated, others);
+            }
+            PersistentAVLNode updated = PersistentAVLTree.delete(others, normalized);
+            return updated == others ? this : new Version(packed, updated);
+        }
+
+        int size() {
+            return packed.size() + PersistentAVLTree.size(others);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package org.morpho;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Weak-root rewrite rules, read from a rules.txt next to patterns.txt.
+ *
+ * Each line gives a pattern, conditions on the root and the template to
+ * use instead when they hold:
+ * <pre>
+ *   فاعل ع=وي : ف ا ئ ل      hollow: قول → قائل
+ *   فعل ل=ي : ف ع ى           defective: رمي → رمى
+ *   افتعل ف=و : ا ت ت ع ل     assimilated: وعد → اتتعد
+ *   فعل ع==ل : ف ع ّ          doubled: مدد → مدّ
+ * </pre>
+ * A condition names a radical (ف, ع or the first ل) and either the letters
+ * it may be ({@code ع=وي}) or another radical it must repeat ({@code ع==ل});
+ * at most one per radical. The first rule of a pattern whose conditions
+ * hold wins. A replacement template may not be longer than the pattern's.
+ *
+ * Rules are compiled into variant {@link Pattern}s attached to the pattern
+ * they rewrite, with each condition a bitmask over {@link RootCodec} letter
+ * codes, so choosing a variant is a few array lookups and a sound root
+ * costs one failed mask test per rule of the pattern. Patterns without
+ * rules carry none and pay nothing.
+ */
+public class WeakRules {
+    public static final String FILE_NAME = "rules.txt";
+
+    public static final WeakRules EMPTY = new WeakRules(Collections.emptyMap());
+
+    private static volatile WeakRules defaults;
+
+    // Normalized pattern name -> its rules in file order
+    private final Map<String, List<Rule>> byPattern;
+
+    private WeakRules(Map<String, List<Rule>> byPattern) {
+        this.byPattern = byPattern;
+    }
+
+    /**
+     * Rules used by patterns built without explicit ones: the file named by
+     * the "morpho.rules" system property, default src/main/data/rules.txt.
+     */
+    public static WeakRules defaults() {
+        WeakRules r = defaults;
+        if (r == null) {
+            synchronized (WeakRules.class) {
+                r = defaults;
+                if (r == null) {
+                    r = load(defaultFile());
+                    defaults = r;
+                }
+            }
+        }
+        return r;
+    }
+
+    /** File of the {@link #defaults()}. */
+    public static File defaultFile() {
+        return new File(System.getProperty("morpho.rules", "src/main/data/" + FILE_NAME));
+    }
+
+    /** The rules file in the same directory as patternsPath. */
+    public static File nextTo(String patternsPath) {
+        File dir = new File(patternsPath).getAbsoluteFile().getParentFile();
+        return new File(dir, FILE_NAME);
+    }
+
+    /** Parses file; a missing file gives {@link #EMPTY}, bad lines are reported and skipped. */
+    public static WeakRules load(File file) {
+        if (!file.isFile())
+            return EMPTY;
+        Map<String, List<Rule>> byPattern = new HashMap<>();
+        try (BufferedReader br = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            int number = 0;
+            while ((line = br.readLine()) != null) {
+                number++;
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#"))
+                    continue;
+                try {
+                    Rule rule = parse(trimmed);
+                    byPattern.computeIfAbsent(rule.pattern, k -> new ArrayList<>()).add(rule);
+                } catch (IllegalArgumentException e) {
+                    System.err.println("⚠ " + file + ":" + number + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("✗ Error loading rules: " + e.getMessage());
+            return EMPTY;
+        }
+        return new WeakRules(byPattern);
+    }
+
+    public boolean isEmpty() {
+        return byPattern.isEmpty();
+    }
+
+    /** Compiled variants of base, in rule order; empty if it has no rules. */
+    Pattern[] variantsOf(Pattern base) {
+        List<Rule> rules = byPattern.get(base.normalizedName);
+        if (rules == null || base.arity == 0)
+            return Pattern.NO_VARIANTS;
+
+        List<Pattern> variants = new ArrayList<>(rules.size());
+        for (Rule rule : rules) {
+            if (rule.template.size() > base.length() || rule.maxRadical() >= base.arity) {
+                System.err.println("⚠ Rule for " + base.name + " does not fit the pattern, ignored: " + rule.template);
+                continue;
+            }
+            long[] allowed = new long[base.arity];
+            int[] sameAs = new int[base.arity];
+            Arrays.fill(sameAs, -1);
+            for (int i = 0; i < rule.radicals.length; i++) {
+                int r = rule.radicals[i];
+                allowed[r] = rule.allowed[i];
+                sameAs[r] = rule.sameAs[i];
+            }
+            boolean displayOnly = Arrays.equals(letters(rule.template, sameAs), letters(base.template, sameAs));
+            variants.add(new Pattern(base, rule.template, allowed, sameAs, displayOnly));
+        }
+        return variants.toArray(Pattern.NO_VARIANTS);
+    }
+
+    /**
+     * template as the letters it gives once normalized: a literal as its
+     * char, a radical as -1 - its index, with a radical that must repeat
+     * another written as that one. Two templates with equal letters differ
+     * only in how the word is written (a shadda for a doubled radical), and
+     * the plain pattern already matches such words.
+     */
+    private static int[] letters(List<String> template, int[] sameAs) {
+        int capacity = 0;
+        for (String cell : template)
+            capacity += cell.length();
+        int[] out = new int[capacity];
+        int n = 0;
+        int lCounter = 0;
+        for (String cell : template) {
+            int radical = cell.equals("ف") ? 0 : cell.equals("ع") ? 1 : cell.equals("ل") ? 2 + lCounter++ : -1;
+            if (radical >= 0) {
+                if (radical < sameAs.length && sameAs[radical] >= 0)
+                    radical = sameAs[radical];
+                out[n++] = -1 - radical;
+                continue;
+            }
+            for (int k = 0; k < cell.length(); k++) {
+                int m = Normalizer.DEFAULT.map(cell.charAt(k));
+                if (m == Normalizer.REPEAT && n > 0)
+                    out[n] = out[n - 1];
+                else if (m < 0)
+                    continue;
+                else
+                    out[n] = m;
+                n++;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static Rule parse(String line) {
+        String[] sides = line.split(":", 2);
+        if (sides.length != 2)
+            throw new IllegalArgumentException("expected \"pattern conditions : template\"");
+        String[] left = sides[0].trim().split("\\s+");
+        List<String> template = Arrays.asList(sides[1].trim().split("\\s+"));
+        if (left.length < 2 || template.get(0).isEmpty())
+            throw new IllegalArgumentException("expected a pattern, conditions and a template");
+
+        int n = left.length - 1;
+        int[] radicals = new int[n];
+        long[] allowed = new long[n];
+        int[] sameAs = new int[n];
+        int seen = 0;
+        for (int i = 0; i < n; i++) {
+            String cond = left[i + 1];
+            int eq = cond.indexOf('=');
+            if (eq != 1)
+                throw new IllegalArgumentException("bad condition: " + cond);
+            radicals[i] = radical(cond.charAt(0), cond);
+            if ((seen & (1 << radicals[i])) != 0)
+                throw new IllegalArgumentException("two conditions on one radical: " + cond);
+            seen |= 1 << radicals[i];
+
+            sameAs[i] = -1;
+            if (cond.startsWith("==", eq)) {
+                if (cond.length() != eq + 3)
+                    throw new IllegalArgumentException("bad condition: " + cond);
+                sameAs[i] = radical(cond.charAt(eq + 2), cond);
+            } else {
+                String letters = Normalizer.DEFAULT.normalize(cond.substring(eq + 1));
+                if (letters.isEmpty())
+                    throw new IllegalArgumentException("no letters in condition: " + cond);
+                for (int k = 0; k < letters.length(); k++) {
+                    int code = RootCodec.letterCode(letters.charAt(k));
+                    if (code == 0)
+                        throw new IllegalArgumentException("not an Arabic letter in condition: " + cond);
+                    allowed[i] |= 1L << code;
+                }
+            }
+        }
+        return new Rule(Normalizer.DEFAULT.normalize(left[0]), radicals, allowed, sameAs, template);
+    }
+
+    private static int radical(char c, String cond) {
+        switch (c) {
+            case 'ف': return 0;
+            case 'ع': return 1;
+            case 'ل': return 2;
+            default: throw new IllegalArgumentException("unknown radical in condition: " + cond);
+        }
+    }
+
+    /** One parsed line. */
+    private static final class Rule {
+        final String pattern;
+        final int[] radicals;
+        final long[] allowed;
+        final int[] sameAs;
+        final List<String> template;
+
+        Rule(String pattern, int[] radicals, long[] allowed, int[] sameAs, List<String> template) {
+            this.pattern = pattern;
+            this.radicals = radicals;
+            this.allowed = allowed;
+            this.sameAs = sameAs;
+            this.template = template;
+        }
+
+        int maxRadical() {
+            int max = 0;
+            for (int i = 0; i < radicals.length; i++)
+                max = Math.max(max, Math.max(radicals[i], sameAs[i]));
+            return max;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package org.morpho.level;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.concurrent.*;
+
+/**
+ * Grades a file of (word, root) pairs against a level's patterns.
+ *
+ * Input is UTF-8 text with one pair per line, the word and the root
+ * separated by spaces or a tab; blank lines are skipped. For every pair
+ * one line "word TAB root TAB pattern" is written, with "-" as the pattern
+ * when the word does not derive from the root and "?" when the line is
+ * not a pair. Output follows input order.
+ *
+ * Lines are read in batches that are validated on a thread pool. At most
+ * a fixed window of batches is in flight: when it is full the reader
+ * waits for the oldest batch and writes it out, so memory stays bounded
+ * however long the input is.
+ */
+public class BatchValidator {
+    private static final int BATCH_SIZE = 1024;
+    private static final String NO_MATCH = "-";
+    private static final String MALFORMED = "?";
+
+    private final Level level;
+    private final boolean feedStatistics;
+    private final int threads;
+
+    /**
+     * @param level Level whose patterns grade the pairs
+     * @param feedStatistics Record every pair in the level's {@link Statistics}; a pair that
+     *        derives from no pattern counts as unmatched, not as a pattern's mistake
+     */
+    public BatchValidator(Level level, boolean feedStatistics) {
+        this.level = level;
+        this.feedStatistics = feedStatistics;
+        this.threads = Runtime.getRuntime().availableProcessors();
+    }
+
+    public Summary validate(Path input, Path output) throws IOException {
+        try (Reader in = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             Writer out = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            return validate(in, out);
+        }
+    }
+
+    public Summary validate(Reader in, Writer out) throws IOException {
+        BufferedReader reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<Batch>> inFlight = new ArrayDeque<>();
+        int window = threads * 2;
+        Summary summary = new Summary();
+        long start = System.nanoTime();
+
+        try {
+            String[] lines = new String[BATCH_SIZE];
+            int n = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                lines[n++] = line;
+                if (n == BATCH_SIZE) {
+                    if (inFlight.size() == window) {
+                        write(inFlight.poll(), out, summary);
+                    }
+                    inFlight.add(submit(pool, lines, n));
+                    lines = new String[BATCH_SIZE];
+                    n = 0;
+                }
+            }
+            if (n > 0) {
+                inFlight.add(submit(pool, lines, n));
+            }
+            while (!inFlight.isEmpty()) {
+                write(inFlight.poll(), out, summary);
+            }
+            out.flush();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        summary.nanos = System.nanoTime() - start;
+        return summary;
+    }
+
+    private Future<Batch> submit(ExecutorService pool, String[] lines, int n) {
+        return pool.submit(() -> check(lines, n));
+    }
+
+    private Batch check(String[] lines, int n) {
+        Batch batch = new Batch(n);
+        StringBuilder text = batch.text;
+        for (int i = 0; i < n; i++) {
+            String line = lines[i].strip();
+            int space = indexOfWhitespace(line);
+            String word = space < 0 ? line : line.substring(0, space);
+            String root = space < 0 ? "" : line.substring(space).strip();
+            String pattern;
+            if (root.isEmpty() || indexOfWhitespace(root) >= 0) {
+                pattern = MALFORMED;
+            } else {
+                pattern = level.validateWord(word, root);
+                if (pattern == null) {
+                    pattern = NO_MATCH;
+                }
+            }
+            batch.patterns[i] = pattern;
+            text.append(word).append('\t').append(root).append('\t').append(pattern).append('\n');
+        }
+        return batch;
+    }
+
+    private static int indexOfWhitespace(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (Character.isWhitespace(s.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Waits for a batch and writes it; runs on the reading thread only. */
+    private void write(Future<Batch> future, Writer out, Summary summary) throws IOException {
+        Batch batch;
+        try {
+            batch = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Batch validation interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Batch validation failed", e.getCause());
+        }
+
+        out.append(batch.text);
+        for (String pattern : batch.patterns) {
+            summary.pairs++;
+            if (pattern == MALFORMED) {
+                summary.malformed++;
+                continue;
+            }
+            boolean matched = pattern != NO_MATCH;
+            if (matched) {
+                summary.matched++;
+            }
+            if (feedStatistics) {
+                if (matched) {
+                    level.getStats().recordAnswer(true, pattern);
+                } else {
+                    level.getStats().recordUnmatched();
+                }
+            }
+        }
+    }
+
+    /** Results of one batch, ready to write. */
+    private static final class Batch {
+        final String[] patterns;
+        final StringBuilder text = new StringBuilder();
+
+        Batch(int n) {
+            this.patterns = new String[n];
+        }
+    }
+
+    /** Counts and timing of one run. */
+    public static class Summary {
+        public long pairs;
+        public long matched;
+        public long malformed;
+        public long nanos;
+
+        public double pairsPerSecond() {
+            return nanos == 0 ? 0.0 : pairs * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d pairs (%d matched, %d unmatched, %d malformed) in %.2f s, %.0f pairs/s",
+                    pairs, matched, pairs - matched - malformed, malformed, nanos / 1e9, pairsPerSecond());
+        }
+    }
+
+    /**
+     * Usage: BatchValidator input output [roots.txt patterns.txt]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2 && args.length != 4) {
+            System.out.println("Usage: BatchValidator <input> <output> [roots.txt patterns.txt]");
+            return;
+        }
+        String roots = args.length == 4 ? args[2] : "src/main/data/roots.txt";
+        String patterns = args.length == 4 ? args[3] : "src/main/data/patterns.txt";
+        Level level = new Level("batch", roots, patterns);
+        Summary summary = new BatchValidator(level, false).validate(Paths.get(args[0]), Paths.get(args[1]));
+        System.out.println("✓ " + summary);
+    }
+}
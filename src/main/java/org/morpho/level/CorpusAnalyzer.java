@@ -0,0 +1,434 @@
+package org.morpho.level;
+
+import org.morpho.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Root and pattern frequencies of a large Arabic text file.
+ *
+ * The file is cut into chunks of about {@link #CHUNK_BYTES}, each boundary
+ * moved forward to the next ASCII whitespace byte so no word is split
+ * (ASCII bytes never occur inside a UTF-8 sequence). Chunks are
+ * memory-mapped one at a time per worker and scanned in parallel.
+ *
+ * Scanning decodes UTF-8 by hand straight into a reusable char buffer.
+ * Every char goes through the {@link Normalizer#DEFAULT} table as it is
+ * decoded, so harakat and tatweel are dropped, hamza seats folded and
+ * shadda doubled on the fly. A token is a run of Arabic letters; anything
+ * else ends it. Each token goes through the level's
+ * pattern automaton without becoming a String, and every analysis bumps
+ * a count keyed by the radicals packed into a long. Strings are only
+ * made per distinct root when the tables are built, so memory depends on
+ * the vocabulary, not on the corpus size.
+ */
+public class CorpusAnalyzer {
+    private static final long CHUNK_BYTES = 64L << 20;
+    // How far a boundary may move looking for whitespace before cutting anyway
+    private static final int MAX_ALIGN = 1 << 20;
+    // Longer tokens cannot match any pattern and are skipped
+    private static final int MAX_TOKEN = 64;
+    // Radicals that fit in a packed key (16 bits each)
+    private static final int MAX_PACKED_ARITY = 4;
+
+    private final Level level;
+
+    public CorpusAnalyzer(Level level) {
+        this.level = level;
+    }
+
+    public Result analyze(Path corpus) throws IOException {
+        long start = System.nanoTime();
+        PatternAutomaton automaton = level.patternAutomaton();
+
+        try (FileChannel channel = FileChannel.open(corpus, StandardOpenOption.READ)) {
+            long[] bounds = chunkBounds(channel);
+            Counts total = IntStream.range(0, bounds.length - 1).parallel()
+                    .mapToObj(i -> scan(channel, bounds[i], bounds[i + 1], automaton))
+                    .collect(Counts::new, Counts::merge, Counts::merge);
+
+            Result result = total.toResult(level);
+            result.bytes = channel.size();
+            result.nanos = System.nanoTime() - start;
+            return result;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /** Chunk start offsets plus the file size, each start on a whitespace byte. */
+    private static long[] chunkBounds(FileChannel channel) throws IOException {
+        long size = channel.size();
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long next = CHUNK_BYTES;
+        while (next < size) {
+            long at = next;
+            long limit = Math.min(size, next + MAX_ALIGN);
+            search:
+            while (at < limit) {
+                probe.clear();
+                int n = channel.read(probe, at);
+                if (n <= 0) {
+                    break;
+                }
+                for (int i = 0; i < n && at < limit; i++, at++) {
+                    if (isAsciiSpace(probe.get(i))) {
+                        break search;
+                    }
+                }
+            }
+            if (at >= size) {
+                break;
+            }
+            bounds.add(at);
+            next = at + CHUNK_BYTES;
+        }
+        bounds.add(size);
+
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    private static boolean isAsciiSpace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f';
+    }
+
+    private static Counts scan(FileChannel channel, long from, long to, PatternAutomaton automaton) {
+        MappedByteBuffer buf;
+        try {
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        Counts counts = new Counts();
+        Normalizer normalizer = Normalizer.DEFAULT;
+        Token token = new Token(MAX_TOKEN);
+        char[] radicals = new char[Math.max(automaton.maxArity(), 1)];
+        PatternAutomaton.MatchHandler handler = counts::add;
+
+        int limit = buf.limit();
+        int i = 0;
+        while (i < limit) {
+            int b0 = buf.get(i) & 0xFF;
+            char c;
+            if (b0 < 0x80) {
+                c = (char) b0;
+                i++;
+            } else if ((b0 & 0xE0) == 0xC0 && i + 1 < limit) {
+                c = (char) (((b0 & 0x1F) << 6) | (buf.get(i + 1) & 0x3F));
+                i += 2;
+            } else if ((b0 & 0xF0) == 0xE0 && i + 2 < limit) {
+                c = (char) (((b0 & 0x0F) << 12) | ((buf.get(i + 1) & 0x3F) << 6) | (buf.get(i + 2) & 0x3F));
+                i += 3;
+            } else {
+                // Four-byte sequences, stray continuation bytes and cut-off tails end the token
+                c = ' ';
+                i++;
+            }
+
+            int m = normalizer.map(c);
+            if (m == Normalizer.DROP) {
+                continue;
+            }
+            if (m == Normalizer.REPEAT) {
+                token.repeatLast();
+                continue;
+            }
+            c = (char) m;
+            if (isArabicLetter(c)) {
+                token.append(c);
+            } else {
+                flush(token, automaton, radicals, handler, counts);
+            }
+        }
+        flush(token, automaton, radicals, handler, counts);
+        return counts;
+    }
+
+    private static void flush(Token token, PatternAutomaton automaton, char[] radicals,
+                              PatternAutomaton.MatchHandler handler, Counts counts) {
+        if (token.length == 0 && !token.overflow) {
+            return;
+        }
+        counts.tokens++;
+        if (!token.overflow) {
+            long before = counts.analyses;
+            automaton.run(token, radicals, handler);
+            if (counts.analyses != before) {
+                counts.analyzedTokens++;
+            }
+        }
+        token.length = 0;
+        token.overflow = false;
+    }
+
+    // Hamza .. yeh
+    private static boolean isArabicLetter(char c) {
+        return c >= '\u0621' && c <= '\u064A';
+    }
+
+    /** Reusable token text; never turned into a String while scanning. */
+    private static final class Token implements CharSequence {
+        final char[] chars;
+        int length;
+        boolean overflow;
+
+        Token(int capacity) {
+            this.chars = new char[capacity];
+        }
+
+        void append(char c) {
+            if (length == chars.length) {
+                overflow = true;
+            } else if (!overflow) {
+                chars[length++] = c;
+            }
+        }
+
+        /** Shadda: the last letter again. */
+        void repeatLast() {
+            if (length > 0) {
+                append(chars[length - 1]);
+            }
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return chars[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(chars, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, 0, length);
+        }
+    }
+
+    /** Counts of one worker; merged once all chunks are done. */
+    private static final class Counts {
+        final LongCounter roots = new LongCounter();
+        // Roots too long to pack, rare enough to key by String
+        final Map<String, Long> longRoots = new HashMap<>();
+        // Dense slot of each pattern met, in the order first met; ordinals are too sparse to index by
+        final Map<Pattern, Integer> slots = new IdentityHashMap<>();
+        Pattern[] patterns = new Pattern[16];
+        long[] perPattern = new long[16];
+        long tokens;
+        long analyzedTokens;
+        long analyses;
+
+        void add(Pattern pattern, char[] radicals) {
+            analyses++;
+            if (pattern.arity <= MAX_PACKED_ARITY) {
+                long key = 0;
+                for (int k = 0; k < pattern.arity; k++) {
+                    key = (key << 16) | radicals[k];
+                }
+                roots.add(key, 1);
+            } else {
+                longRoots.merge(new String(radicals, 0, pattern.arity), 1L, Long::sum);
+            }
+            countPattern(pattern, 1);
+        }
+
+        private void countPattern(Pattern pattern, long n) {
+            Integer slot = slots.get(pattern);
+            if (slot == null) {
+                slot = slots.size();
+                if (slot == patterns.length) {
+                    patterns = Arrays.copyOf(patterns, slot * 2);
+                    perPattern = Arrays.copyOf(perPattern, slot * 2);
+                }
+                slots.put(pattern, slot);
+                patterns[slot] = pattern;
+            }
+            perPattern[slot] += n;
+        }
+
+        Counts merge(Counts other) {
+            tokens += other.tokens;
+            analyzedTokens += other.analyzedTokens;
+            analyses += other.analyses;
+            other.roots.forEach((key, n) -> roots.add(key, n));
+            other.longRoots.forEach((root, n) -> longRoots.merge(root, n, Long::sum));
+            for (int o = 0; o < other.slots.size(); o++) {
+                countPattern(other.patterns[o], other.perPattern[o]);
+            }
+            return this;
+        }
+
+        Result toResult(Level level) {
+            Result result = new Result();
+            result.tokens = tokens;
+            result.analyzedTokens = analyzedTokens;
+
+            List<Map.Entry<String, Long>> rootList = new ArrayList<>();
+            char[] buf = new char[MAX_PACKED_ARITY];
+            roots.forEach((key, n) -> rootList.add(Map.entry(unpack(key, buf), n)));
+            rootList.addAll(longRoots.entrySet());
+            for (Map.Entry<String, Long> e : sortByCount(rootList)) {
+                result.rootCounts.put(e.getKey(), e.getValue());
+                if (level.searchRoot(e.getKey()) != null) {
+                    result.attestedRoots.add(e.getKey());
+                }
+            }
+
+            List<Map.Entry<String, Long>> patternList = new ArrayList<>();
+            for (int o = 0; o < slots.size(); o++) {
+                patternList.add(Map.entry(patterns[o].name, perPattern[o]));
+            }
+            for (Map.Entry<String, Long> e : sortByCount(patternList)) {
+                result.patternCounts.put(e.getKey(), e.getValue());
+            }
+            return result;
+        }
+
+        private static String unpack(long key, char[] buf) {
+            int n = 0;
+            for (long k = key; k != 0; k >>>= 16) {
+                n++;
+            }
+            for (int i = n - 1; i >= 0; i--, key >>>= 16) {
+                buf[i] = (char) (key & 0xFFFF);
+            }
+            return new String(buf, 0, n);
+        }
+
+        private static List<Map.Entry<String, Long>> sortByCount(List<Map.Entry<String, Long>> entries) {
+            entries.sort((a, b) -> {
+                int c = Long.compare(b.getValue(), a.getValue());
+                return c != 0 ? c : a.getKey().compareTo(b.getKey());
+            });
+            return entries;
+        }
+    }
+
+    /** Open-addressing long → count map; key 0 is never used (roots have no NUL letter). */
+    private static final class LongCounter {
+        interface Visitor {
+            void visit(long key, long count);
+        }
+
+        private long[] keys = new long[1024];
+        private long[] counts = new long[1024];
+        private int size;
+
+        void add(long key, long n) {
+            int mask = keys.length - 1;
+            int i = mix(key) & mask;
+            while (keys[i] != 0 && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (keys[i] == 0) {
+                keys[i] = key;
+                if (++size > keys.length - (keys.length >>> 2)) {
+                    counts[i] = n;
+                    grow();
+                    return;
+                }
+            }
+            counts[i] += n;
+        }
+
+        void forEach(Visitor visitor) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0) {
+                    visitor.visit(keys[i], counts[i]);
+                }
+            }
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            long[] oldCounts = counts;
+            keys = new long[oldKeys.length << 1];
+            counts = new long[oldKeys.length << 1];
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] != 0) {
+                    int i = mix(oldKeys[j]) & mask;
+                    while (keys[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[j];
+                    counts[i] = oldCounts[j];
+                }
+            }
+        }
+
+        private static int mix(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    /** Frequency tables of one corpus, most frequent first. */
+    public static class Result {
+        public long bytes;
+        public long tokens;
+        // Tokens with at least one analysis
+        public long analyzedTokens;
+        public long nanos;
+        // Every candidate root of every analysis, attested or not
+        public Map<String, Long> rootCounts = new LinkedHashMap<>();
+        public Set<String> attestedRoots = new HashSet<>();
+        public Map<String, Long> patternCounts = new LinkedHashMap<>();
+
+        @Override
+        public String toString() {
+            return String.format("%d MB, %d tokens (%d analyzed), %d roots, %d patterns in %.2f s",
+                    bytes >> 20, tokens, analyzedTokens, rootCounts.size(), patternCounts.size(), nanos / 1e9);
+        }
+    }
+
+    /**
+     * Usage: CorpusAnalyzer corpus.txt [top] [roots.txt patterns.txt]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1 && args.length != 2 && args.length != 4) {
+            System.out.println("Usage: CorpusAnalyzer <corpus> [top] [roots.txt patterns.txt]");
+            return;
+        }
+        int top = args.length >= 2 ? Integer.parseInt(args[1]) : 20;
+        String roots = args.length == 4 ? args[2] : "src/main/data/roots.txt";
+        String patterns = args.length == 4 ? args[3] : "src/main/data/patterns.txt";
+        Level level = new Level("corpus", roots, patterns);
+        Result result = new CorpusAnalyzer(level).analyze(Paths.get(args[0]));
+
+        System.out.println("✓ " + result);
+        System.out.println("\n--- Racines ---");
+        int i = 0;
+        for (Map.Entry<String, Long> e : result.rootCounts.entrySet()) {
+            if (i++ == top) {
+                break;
+            }
+            System.out.println(e.getKey() + "\t" + e.getValue() + (result.attestedRoots.contains(e.getKey()) ? "" : "\t(non attestée)"));
+        }
+        System.out.println("\n--- Schèmes ---");
+        for (Map.Entry<String, Long> e : result.patternCounts.entrySet()) {
+            System.out.println(e.getKey() + "\t" + e.getValue());
+        }
+    }
+}
@@ -1,189 +1,535 @@
 package org.morpho.level;
 
 import org.morpho.*;
-import java.io.*;
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Represents a learning level in the pedagogical system.
  * All levels share the same data/roots.txt and data/patterns.txt
  * but have different pattern enable/disable configurations.
+ * The loaded data itself comes from {@link LexiconRegistry} and is shared too.
+ *
+ * Many threads may generate, validate and analyze on one level at once;
+ * pattern edits are serialized and publish a new table and enabled set,
+ * so readers never wait on them.
+ *
+ * In precompute mode (system property "morpho.precompute", or
+ * {@link #setPrecomputed}) the level also keeps every roots × enabled-patterns
+ * word in a {@link DerivationMatrix}, so generation is a table lookup.
+ * A word depends only on its root and pattern, so after an edit the matrix
+ * is still right for every word it holds; it keeps serving, with new roots
+ * and patterns falling back to the cache, while a fresh one is built in
+ * the background once edits have paused for half a second,
+ * so a burst of edits costs one rebuild, not one per edit.
  */
 public class Level {
+    // Quiet time after the last edit before the matrix is rebuilt
+    private static final long REBUILD_DELAY_MS = 500;
+
     private String name;
-    private AVLTree rootTree;
-    private AVLNode rootNode;
-    private HashTable patternTable;
-    private Set<String> enabledPatterns;
+    private String rootsPath;
+    private String patternsPath;
+    private RootStore rootStore;
+    private volatile HashTable patternTable;
+    // True while patternTable is shared with the registry or a snapshot; copied before the first edit
+    private boolean patternsShared;
+    // Enabled patterns of the table as bits over per-level slots; replaced, never mutated, once published
+    private volatile EnabledSet enabledPatterns;
+    // Cached read-only views, rebuilt once enabledPatterns has been replaced
+    private volatile EnabledViews enabledViews;
+    // Bumped after every root or pattern edit
+    private final AtomicInteger edits = new AtomicInteger();
+    private volatile boolean precomputed;
+    private volatile MatrixSnapshot matrix;
+    // True while a background rebuild of the matrix is scheduled or running
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    // Records root and pattern edits when attached
+    private volatile EditJournal journal;
+    // Puts read back from the journal and not yet inserted, only during attachJournal
+    private Map<String, List<String>> replayedPuts;
     private Statistics stats;
+    // Shared stores the level was loaded from: the baseline LexiconWatcher compares the files with
+    private final RootStore loadedRoots;
+    private final HashTable loadedPatterns;
 
     /**
-     * Create a level that loads from shared data files
+     * Create a level over shared data files.
+     * Files already loaded by another level are reused, not parsed again;
+     * this level only keeps its own edits, enabled patterns and statistics.
      * @param name Level name (e.g., "Beginner", "Intermediate")
      * @param rootsPath Path to roots.txt (usually "src/main/data/roots.txt")
      * @param patternsPath Path to patterns.txt (usually "src/main/data/patterns.txt")
      */
     public Level(String name, String rootsPath, String patternsPath) {
         this.name = name;
-        this.rootTree = new AVLTree();
-        this.rootNode = null;
-        this.patternTable = new HashTable();
-        this.enabledPatterns = new HashSet<>();
+        this.rootsPath = rootsPath;
+        this.patternsPath = patternsPath;
+        LexiconRegistry.preload(rootsPath, patternsPath);
+        this.loadedRoots = LexiconRegistry.roots(rootsPath);
+        this.loadedPatterns = LexiconRegistry.patterns(patternsPath);
+        this.rootStore = loadedRoots.snapshot();
+        this.patternTable = loadedPatterns;
+        this.patternsShared = true;
         this.stats = new Statistics();
         
-        loadRoots(rootsPath);
-        loadPatterns(patternsPath);
-        
         // Enable all patterns by default
         // Teachers can disable specific patterns for lower levels
-        for (Pattern p : patternTable.values()) {
-            enabledPatterns.add(p.name);
+        EnabledSet enabled = new EnabledSet();
+        for (Pattern p : patternTable) {
+            enabled.set(p, true);
         }
-    }
-
-    private void loadRoots(String path) {
-        try {
-            File file = new File(path);
-            if (!file.exists()) {
-                System.err.println("⚠ Roots file not found: " + path);
-                System.err.println("  Create the file or add roots via Teacher Mode.");
-                return;
-            }
-            
-            BufferedReader br = new BufferedReader(
-                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
-            String line;
-            while ((line = br.readLine()) != null) {
-                String trimmed = line.trim();
-                if (!trimmed.isEmpty()) {
-                    rootNode = rootTree.insert(rootNode, new RootData(trimmed));
-                }
+        this.enabledPatterns = enabled;
+        this.precomputed = Boolean.getBoolean("morpho.precompute");
+        if (precomputed) {
+            // A compiled snapshot may already hold the whole grid
+            DerivationMatrix loaded = LexiconRegistry.derivations(rootsPath, patternsPath);
+            if (loaded != null) {
+                matrix = new MatrixSnapshot(loaded, edits.get());
+            } else {
+                refreshMatrix();
             }
-            br.close();
-            System.out.println("✓ Loaded roots for level: " + name);
-        } catch (Exception e) {
-            System.err.println("✗ Error loading roots: " + e.getMessage());
         }
+        System.out.println("✓ Level ready: " + name);
     }
 
-    private void loadPatterns(String path) {
-        try {
-            File file = new File(path);
-            if (!file.exists()) {
-                System.err.println("⚠ Patterns file not found: " + path);
-                System.err.println("  Create the file or add patterns via Teacher Mode.");
-                return;
-            }
-            
-            BufferedReader br = new BufferedReader(
-                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
-            String line;
-            while ((line = br.readLine()) != null) {
-                String trimmed = line.trim();
-                if (!trimmed.isEmpty() && trimmed.contains(":")) {
-                    String[] parts = trimmed.split(":", 2);
-                    if (parts.length >= 2) {
-                        String patternName = parts[0].trim();
-                        String templateStr = parts[1].trim();
-                        List<String> template = Arrays.asList(templateStr.split("\\s+"));
-                        patternTable.addPattern(patternName, new Pattern(patternName, template));
-                    }
-                }
-            }
-            br.close();
-            System.out.println("✓ Loaded patterns for level: " + name);
-        } catch (Exception e) {
-            System.err.println("✗ Error loading patterns: " + e.getMessage());
+    private Level(String name, Level source) {
+        this.name = name;
+        this.rootsPath = source.rootsPath;
+        this.patternsPath = source.patternsPath;
+        this.loadedRoots = source.loadedRoots;
+        this.loadedPatterns = source.loadedPatterns;
+        this.rootStore = source.rootStore.snapshot();
+        this.patternTable = source.patternTable;
+        this.patternsShared = true;
+        synchronized (source) {
+            source.patternsShared = true;
         }
+        this.enabledPatterns = source.enabledPatterns;
+        this.precomputed = source.precomputed;
+        this.stats = new Statistics();
+    }
+
+    /**
+     * Copy of this level under a new name, made in O(1) for the roots.
+     * Both levels share all roots and patterns until one of them is edited,
+     * and then diverge only where the edit happened.
+     * Statistics start empty.
+     */
+    public Level snapshot(String newName) {
+        return new Level(newName, this);
     }
 
     // ==================== ROOT MANAGEMENT ====================
-    
+    // Roots keep their spelling (أكل) and are looked up by their Normalizer form (اكل)
+
     public void addRoot(String root) {
-        rootNode = rootTree.insert(rootNode, new RootData(root));
+        rootStore.add(root);
+        edits.incrementAndGet();
+        record(EditJournal.Op.ADD_ROOT, root, Collections.emptyList());
     }
 
     public void removeRoot(String root) {
-        rootNode = rootTree.delete(rootNode, root);
+        rootStore.remove(root);
+        edits.incrementAndGet();
+        record(EditJournal.Op.REMOVE_ROOT, root, Collections.emptyList());
     }
 
     public RootData searchRoot(String root) {
-        return rootTree.search(rootNode, root);
+        return rootStore.search(root);
     }
 
     public List<String> getAllRoots() {
-        List<String> roots = new ArrayList<>();
-        collectRoots(rootNode, roots);
-        return roots;
+        return rootStore.list();
     }
 
-    private void collectRoots(AVLNode node, List<String> roots) {
-        if (node != null) {
-            collectRoots(node.left, roots);
-            roots.add(node.data.root);
-            collectRoots(node.right, roots);
-        }
+    /** Roots beginning with prefix, in order; a range scan over the packed roots. */
+    public List<String> findRootsByPrefix(String prefix) {
+        return rootStore.withPrefix(prefix);
     }
 
     // ==================== PATTERN MANAGEMENT ====================
     
-    public void addPattern(String name, List<String> template) {
-        patternTable.addPattern(name, new Pattern(name, template));
-        enabledPatterns.add(name);
+    /** Adds the pattern, or replaces the one already under name (as a journal replay may). */
+    public synchronized void addPattern(String name, List<String> template) {
+        ownPatterns();
+        Pattern pattern = new Pattern(name, template, LexiconRegistry.rules(patternsPath));
+        Pattern old = patternTable.get(name);
+        if (old != null) {
+            retire(old);
+        }
+        patternTable.insert(name, pattern);
+        setEnabled(pattern, true);
+        record(EditJournal.Op.PUT_PATTERN, name, template);
+    }
+
+    public synchronized void removePattern(String name) {
+        ownPatterns();
+        Pattern pattern = findPattern(name);
+        if (pattern != null) {
+            retire(pattern);
+            patternTable.deletePattern(pattern.name);
+        }
+        record(EditJournal.Op.REMOVE_PATTERN, name, Collections.emptyList());
     }
 
-    public void removePattern(String name) {
-        patternTable.deletePattern(name);
-        enabledPatterns.remove(name);
+    private void ownPatterns() {
+        if (patternsShared) {
+            patternTable = patternTable.copy();
+            patternsShared = false;
+        }
+    }
+
+    /** Pattern named name, or else the one whose name normalizes the same (فعال for فعّال). */
+    private Pattern findPattern(String name) {
+        Pattern pattern = patternTable.get(name);
+        if (pattern == null) {
+            String normalized = Normalizer.DEFAULT.normalize(name);
+            for (Pattern p : patternTable) {
+                if (p.normalizedName.equals(normalized)) {
+                    return p;
+                }
+            }
+        }
+        return pattern;
     }
 
     public List<Pattern> getAllPatterns() {
         return patternTable.values();
     }
 
+    /**
+     * Enabled patterns, in table order. The list is cached and read-only;
+     * it is only rebuilt after the enabled set or the patterns change.
+     */
     public List<Pattern> getEnabledPatterns() {
+        return enabledViews().all;
+    }
+
+    /**
+     * Enabled patterns that take a root of the given length (cached, read-only).
+     */
+    public List<Pattern> getEnabledPatterns(int arity) {
+        List<List<Pattern>> byArity = enabledViews().byArity;
+        if (arity < 0 || arity >= byArity.size()) {
+            return Collections.emptyList();
+        }
+        return byArity.get(arity);
+    }
+
+    private EnabledViews enabledViews() {
+        EnabledViews views = enabledViews;
+        if (views == null || views.enabled != enabledPatterns) {
+            views = buildEnabledViews();
+            enabledViews = views;
+        }
+        return views;
+    }
+
+    private EnabledViews buildEnabledViews() {
+        EnabledSet set = enabledPatterns;
         List<Pattern> enabled = new ArrayList<>();
-        for (Pattern p : patternTable.values()) {
-            if (enabledPatterns.contains(p.name)) {
+        int maxArity = 0;
+        for (Pattern p : patternTable) {
+            if (set.contains(p)) {
                 enabled.add(p);
+                maxArity = Math.max(maxArity, p.arity);
+            }
+        }
+
+        List<List<Pattern>> byArity = new ArrayList<>(maxArity + 1);
+        for (int a = 0; a <= maxArity; a++) {
+            List<Pattern> group = new ArrayList<>();
+            for (Pattern p : enabled) {
+                if (p.arity == a) {
+                    group.add(p);
+                }
             }
+            byArity.add(Collections.unmodifiableList(group));
+        }
+
+        return new EnabledViews(set, Collections.unmodifiableList(enabled), byArity);
+    }
+
+    /** Enables the pattern; false, with a warning, if the level has no pattern of that name. */
+    public synchronized boolean enablePattern(String patternName) {
+        Pattern pattern = findPattern(patternName);
+        if (pattern == null) {
+            warnUnknownPattern(patternName);
+            return false;
+        }
+        if (!enabledPatterns.contains(pattern)) {
+            setEnabled(pattern, true);
+            record(EditJournal.Op.ENABLE_PATTERN, patternName, Collections.emptyList());
+        }
+        return true;
+    }
+
+    /** Disables the pattern; false, with a warning, if the level has no pattern of that name. */
+    public synchronized boolean disablePattern(String patternName) {
+        Pattern pattern = findPattern(patternName);
+        if (pattern == null) {
+            warnUnknownPattern(patternName);
+            return false;
+        }
+        if (enabledPatterns.contains(pattern)) {
+            setEnabled(pattern, false);
+            record(EditJournal.Op.DISABLE_PATTERN, patternName, Collections.emptyList());
         }
-        return enabled;
+        return true;
     }
 
-    public void enablePattern(String patternName) {
-        enabledPatterns.add(patternName);
+    private void warnUnknownPattern(String patternName) {
+        System.err.println("⚠ Pattern not found in level " + name + ": " + patternName);
     }
 
-    public void disablePattern(String patternName) {
-        enabledPatterns.remove(patternName);
+    // Copy-on-write so readers holding the old set never see it change.
+    // Every pattern edit goes through here, which also retires the cached views.
+    private void setEnabled(Pattern pattern, boolean enabled) {
+        EnabledSet next = enabledPatterns.copy();
+        next.set(pattern, enabled);
+        enabledPatterns = next;
+        edits.incrementAndGet();
+    }
+
+    // As setEnabled, for a pattern leaving the table: its slot is freed for the next one
+    private void retire(Pattern pattern) {
+        EnabledSet next = enabledPatterns.copy();
+        next.remove(pattern);
+        enabledPatterns = next;
+        edits.incrementAndGet();
     }
 
     public boolean isPatternEnabled(String patternName) {
-        return enabledPatterns.contains(patternName);
+        Pattern pattern = findPattern(patternName);
+        return pattern != null && enabledPatterns.contains(pattern);
+    }
+
+    public boolean isPatternEnabled(Pattern pattern) {
+        return enabledPatterns.contains(pattern);
+    }
+
+    /**
+     * Applies a change of the source files. The roots switch in one step,
+     * so readers see them all from before or all from after; the patterns
+     * switch in a second step, the enabled set just before the table, so a
+     * reader in between sees the old table with its replaced and removed
+     * patterns disabled. The two steps are not one: a reader may see the
+     * new roots with the old patterns. {@link LexiconWatcher} only ever
+     * passes one of the two.
+     * Replaced patterns keep their enabled state; new ones are enabled.
+     * @param upserts Patterns added or whose template changed, by name
+     * @return The patterns replaced or removed, whose cached words are now stale
+     */
+    public synchronized List<Pattern> applyDelta(Collection<String> addedRoots, Collection<String> removedRoots,
+                                                 Map<String, List<String>> upserts, Collection<String> removedPatterns) {
+        rootStore.apply(addedRoots, removedRoots);
+
+        List<Pattern> retired = new ArrayList<>();
+        if (!upserts.isEmpty() || !removedPatterns.isEmpty()) {
+            HashTable next = patternTable.copy();
+            EnabledSet enabled = enabledPatterns.copy();
+            for (String patternName : removedPatterns) {
+                Pattern old = next.get(patternName);
+                if (old != null) {
+                    retired.add(old);
+                    enabled.remove(old);
+                    next.deletePattern(patternName);
+                }
+            }
+            for (Map.Entry<String, List<String>> e : upserts.entrySet()) {
+                Pattern old = next.get(e.getKey());
+                boolean wasEnabled = old == null || enabled.remove(old);
+                if (old != null) {
+                    retired.add(old);
+                }
+                Pattern pattern = new Pattern(e.getKey(), e.getValue(), LexiconRegistry.rules(patternsPath));
+                next.insert(e.getKey(), pattern);
+                enabled.set(pattern, wasEnabled);
+            }
+            // Set first: a reader pairing it with the old table only sees retired patterns as disabled
+            enabledPatterns = enabled;
+            patternTable = next;
+            patternsShared = false;
+        }
+        edits.incrementAndGet();
+        return retired;
+    }
+
+    // ==================== JOURNAL ====================
+
+    /**
+     * Replays the edits saved in journal, then records every further root
+     * and pattern edit (and enable/disable) in it. Edits coming from the
+     * data files themselves, see {@link #applyDelta}, are not recorded.
+     */
+    public synchronized void attachJournal(EditJournal journal) throws IOException {
+        replayedPuts = new LinkedHashMap<>();
+        journal.replay(this::replayEdit);
+        putReplayedPatterns();
+        replayedPuts = null;
+        this.journal = journal;
+    }
+
+    public EditJournal getJournal() {
+        return journal;
+    }
+
+    // Consecutive replayed puts are gathered and inserted with one HashTable.putAll
+    private void replayEdit(EditJournal.Op op, String key, List<String> template) {
+        switch (op) {
+            case ADD_ROOT -> addRoot(key);
+            case REMOVE_ROOT -> removeRoot(key);
+            case PUT_PATTERN -> {
+                replayedPuts.remove(key);
+                replayedPuts.put(key, template);
+            }
+            case REMOVE_PATTERN -> {
+                putReplayedPatterns();
+                removePattern(key);
+            }
+            case ENABLE_PATTERN -> {
+                putReplayedPatterns();
+                enablePattern(key);
+            }
+            case DISABLE_PATTERN -> {
+                putReplayedPatterns();
+                disablePattern(key);
+            }
+        }
+    }
+
+    /** Upserts the gathered puts as one batch, enabled, replacing any pattern of the same name. */
+    private void putReplayedPatterns() {
+        if (replayedPuts.isEmpty()) {
+            return;
+        }
+        ownPatterns();
+        EnabledSet enabled = enabledPatterns.copy();
+        Map<String, Pattern> batch = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> e : replayedPuts.entrySet()) {
+            Pattern old = patternTable.get(e.getKey());
+            if (old != null) {
+                enabled.remove(old);
+            }
+            Pattern pattern = new Pattern(e.getKey(), e.getValue(), LexiconRegistry.rules(patternsPath));
+            enabled.set(pattern, true);
+            batch.put(e.getKey(), pattern);
+        }
+        // Set first, as in applyDelta: the old table then only loses replaced patterns
+        enabledPatterns = enabled;
+        patternTable.putAll(batch);
+        edits.incrementAndGet();
+        replayedPuts.clear();
+    }
+
+    private void record(EditJournal.Op op, String key, List<String> template) {
+        EditJournal j = journal;
+        if (j != null) {
+            j.append(op, key, template);
+        }
     }
 
     // ==================== WORD GENERATION/VALIDATION ====================
     
     /**
-     * Generate a word using an enabled pattern only
+     * Generate a word using an enabled pattern only.
+     * Words come from the shared {@link DerivationCache}.
      */
     public String generateWord(String root, String patternName) {
-        if (!enabledPatterns.contains(patternName)) {
+        Pattern pattern = findPattern(patternName);
+        if (pattern == null || !enabledPatterns.contains(pattern)) {
             return null; // Pattern not enabled for this level
         }
-        
-        Pattern pattern = null;
-        for (Pattern p : patternTable.values()) {
-            if (p.name.equals(patternName)) {
-                pattern = p;
-                break;
+        // Written with the stored spelling, so أكل keeps its hamza even when typed اكل
+        RootData stored = rootStore.search(root);
+        root = stored != null ? stored.root : Normalizer.SPELLING.normalize(root);
+        DerivationMatrix m = currentMatrix();
+        if (m != null) {
+            String word = m.get(root, pattern);
+            if (word != null) {
+                return word;
             }
         }
-        
-        if (pattern == null) return null;
-        return MorphEngine.generateWord(root, pattern);
+        return DerivationCache.shared().generate(root, pattern);
+    }
+
+    // ==================== PRECOMPUTE MODE ====================
+
+    /**
+     * Turn precompute mode on or off. Turning it on builds the matrix now,
+     * spread across all cores; a grid too large for one matrix leaves the
+     * mode off, with a message.
+     */
+    public void setPrecomputed(boolean on) {
+        precomputed = on;
+        if (on) {
+            refreshMatrix();
+        } else {
+            matrix = null;
+        }
+    }
+
+    public boolean isPrecomputed() {
+        return precomputed;
+    }
+
+    /**
+     * Matrix to generate from, or null outside precompute mode. One older
+     * than the last edit is still returned, see the class comment, and a
+     * rebuild is scheduled if none is pending.
+     */
+    private DerivationMatrix currentMatrix() {
+        if (!precomputed) {
+            return null;
+        }
+        MatrixSnapshot snap = matrix;
+        if (snap == null || snap.edits != edits.get()) {
+            if (rebuilding.compareAndSet(false, true)) {
+                scheduleRebuild(edits.get());
+            }
+        }
+        return snap == null ? null : snap.matrix;
+    }
+
+    // Rebuilds once no edit came in for REBUILD_DELAY_MS since seen; until then it keeps waiting
+    private void scheduleRebuild(int seen) {
+        CompletableFuture.delayedExecutor(REBUILD_DELAY_MS, TimeUnit.MILLISECONDS).execute(() -> {
+            int now = edits.get();
+            if (now != seen) {
+                scheduleRebuild(now);
+                return;
+            }
+            try {
+                refreshMatrix();
+            } finally {
+                rebuilding.set(false);
+            }
+        });
+    }
+
+    /**
+     * Builds the matrix of the current roots and enabled patterns and
+     * publishes it. Takes no lock: edits made meanwhile only leave it
+     * tagged with an older version, to be rebuilt again.
+     */
+    private void refreshMatrix() {
+        int version = edits.get();
+        try {
+            MatrixSnapshot snap = new MatrixSnapshot(
+                    DerivationMatrix.build(rootStore.list(), getEnabledPatterns()), version);
+            if (precomputed) {
+                matrix = snap;
+            }
+        } catch (IllegalArgumentException e) {
+            precomputed = false;
+            matrix = null;
+            System.err.println("✗ Precompute mode turned off for level " + name + ": " + e.getMessage());
+        }
     }
 
     /**
@@ -193,21 +539,121 @@ public class Level {
         return MorphEngine.validate(word, root, patternTable);
     }
 
+    /**
+     * Find every root and pattern that can produce a word
+     */
+    public List<Analysis> analyzeWord(String word) {
+        return MorphEngine.analyze(word, patternTable, rootStore::contains);
+    }
+
+    /** Current pattern automaton, for tools that run words through it directly. */
+    PatternAutomaton patternAutomaton() {
+        return patternTable.automaton();
+    }
+
     // ==================== GETTERS ====================
     
     public String getName() {
         return name;
     }
 
+    public String getRootsPath() {
+        return rootsPath;
+    }
+
+    public String getPatternsPath() {
+        return patternsPath;
+    }
+
+    /** Roots of the roots file as loaded for this level, before any edit. */
+    RootStore getLoadedRoots() {
+        return loadedRoots;
+    }
+
+    /** Patterns of the patterns file as loaded for this level, before any edit. */
+    HashTable getLoadedPatterns() {
+        return loadedPatterns;
+    }
+
     public Statistics getStats() {
         return stats;
     }
 
-    public AVLNode getRootNode() {
-        return rootNode;
+    private static final class MatrixSnapshot {
+        final DerivationMatrix matrix;
+        final int edits;
+
+        MatrixSnapshot(DerivationMatrix matrix, int edits) {
+            this.matrix = matrix;
+            this.edits = edits;
+        }
     }
 
-    public void setRootNode(AVLNode node) {
-        this.rootNode = node;
+    /**
+     * Which patterns of the table are enabled. Each pattern has a slot,
+     * the lowest one free when it joined, and the enabled ones have their
+     * slot's bit set. A retired pattern frees its slot for the next one, so
+     * slots stay below the most patterns the table has held, whatever the
+     * ordinals. Edited only on a copy that is not yet published.
+     */
+    private static final class EnabledSet {
+        private final IdentityHashMap<Pattern, Integer> slots;
+        private final BitSet used;
+        private final BitSet bits;
+
+        EnabledSet() {
+            this(new IdentityHashMap<>(), new BitSet(), new BitSet());
+        }
+
+        private EnabledSet(IdentityHashMap<Pattern, Integer> slots, BitSet used, BitSet bits) {
+            this.slots = slots;
+            this.used = used;
+            this.bits = bits;
+        }
+
+        EnabledSet copy() {
+            return new EnabledSet(new IdentityHashMap<>(slots), (BitSet) used.clone(), (BitSet) bits.clone());
+        }
+
+        boolean contains(Pattern pattern) {
+            Integer slot = slots.get(pattern);
+            return slot != null && bits.get(slot);
+        }
+
+        /** Enables or disables pattern, giving it a slot if it has none yet. */
+        void set(Pattern pattern, boolean enabled) {
+            Integer slot = slots.get(pattern);
+            if (slot == null) {
+                slot = used.nextClearBit(0);
+                used.set(slot);
+                slots.put(pattern, slot);
+            }
+            bits.set(slot, enabled);
+        }
+
+        /** Frees the slot of pattern; returns whether it was enabled. */
+        boolean remove(Pattern pattern) {
+            Integer slot = slots.remove(pattern);
+            if (slot == null) {
+                return false;
+            }
+            boolean enabled = bits.get(slot);
+            used.clear(slot);
+            bits.clear(slot);
+            return enabled;
+        }
+    }
+
+    /** Enabled-pattern lists built from one version of the enabled set. */
+    private static final class EnabledViews {
+        final EnabledSet enabled;
+        final List<Pattern> all;
+        final List<List<Pattern>> byArity;
+
+        EnabledViews(EnabledSet enabled, List<Pattern> all, List<List<Pattern>> byArity) {
+            this.enabled = enabled;
+            this.all = all;
+            this.byArity = byArity;
+        }
     }
-}
\ No newline at end of file
+}
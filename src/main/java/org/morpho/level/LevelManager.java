@@ -1,17 +1,32 @@
 package org.morpho.level;
 
+import org.morpho.EditJournal;
 import java.io.File;
+import java.io.IOException;
 import java.util.*;
 
 /**
  * Manages multiple learning levels in the system.
  * Handles level creation, deletion, and access.
+ * With the system property "morpho.watch" set, levels follow edits to
+ * their data files through a {@link LexiconWatcher}.
+ * Edits made to a level are kept in its {@link EditJournal}, under
+ * journal/ next to its roots file, unless "morpho.journal" is "false";
+ * removing the level deletes it.
  */
 public class LevelManager {
     private Map<String, Level> levels;
+    private LexiconWatcher watcher;
 
     public LevelManager() {
         this.levels = new LinkedHashMap<>();
+        if (Boolean.getBoolean("morpho.watch")) {
+            try {
+                this.watcher = new LexiconWatcher();
+            } catch (IOException e) {
+                System.err.println("✗ File watching unavailable: " + e.getMessage());
+            }
+        }
     }
 
     /**
@@ -20,13 +35,66 @@ public class LevelManager {
     public void addLevel(String name, String rootsPath, String patternsPath) {
         Level level = new Level(name, rootsPath, patternsPath);
         levels.put(name, level);
+        journal(level);
+        watch(level);
+    }
+
+    /**
+     * Add a new level as a copy of an existing one.
+     * The copy shares the source's data until either level is edited.
+     */
+    public boolean copyLevel(String sourceName, String newName) {
+        Level source = levels.get(sourceName);
+        if (source == null || levels.containsKey(newName)) {
+            return false;
+        }
+        Level copy = source.snapshot(newName);
+        levels.put(newName, copy);
+        journal(copy);
+        watch(copy);
+        return true;
+    }
+
+    private void journal(Level level) {
+        if ("false".equals(System.getProperty("morpho.journal"))) {
+            return;
+        }
+        File dir = new File(new File(level.getRootsPath()).getAbsoluteFile().getParentFile(), "journal");
+        String file = level.getName().replaceAll("[^\\p{L}\\p{N}_-]", "_") + ".journal";
+        try {
+            level.attachJournal(new EditJournal(new File(dir, file).toPath()));
+        } catch (IOException e) {
+            System.err.println("✗ Cannot open journal of level " + level.getName() + ": " + e.getMessage());
+        }
+    }
+
+    private void watch(Level level) {
+        if (watcher == null) {
+            return;
+        }
+        try {
+            watcher.watch(level);
+        } catch (IOException e) {
+            System.err.println("✗ Cannot watch files of level " + level.getName() + ": " + e.getMessage());
+        }
     }
 
     /**
      * Remove a level by name
      */
     public void removeLevel(String name) {
-        levels.remove(name);
+        Level level = levels.remove(name);
+        if (level != null && watcher != null) {
+            watcher.unwatch(level);
+        }
+        if (level != null && level.getJournal() != null) {
+            try {
+                // A later level with the same name must start clean
+                level.getJournal().delete();
+            } catch (IOException e) {
+                System.err.println("✗ Error deleting journal of level " + name + ": " + e.getMessage());
+            }
+        }
     }
 
     /**
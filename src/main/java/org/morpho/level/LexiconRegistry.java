@@ -0,0 +1,225 @@
+package org.morpho.level;
+
+import org.morpho.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide cache of loaded data files, keyed by canonical path.
+ * Every level pointing at the same roots.txt or patterns.txt gets the same
+ * loaded copy, so each file is parsed once and each RootData and Pattern
+ * exists once no matter how many levels use it.
+ *
+ * The cached stores are frozen, so they cannot be edited: levels take a
+ * snapshot of the roots and copy the pattern table before their first
+ * edit, which leaves them holding only their own changes. A file that is
+ * missing or fails to load is not cached, so the next use tries again.
+ */
+public class LexiconRegistry {
+    private static final RootStore NO_ROOTS = new RootStore().freeze();
+    private static final HashTable NO_PATTERNS = new HashTable().freeze();
+
+    private static final Map<String, RootStore> roots = new ConcurrentHashMap<>();
+    private static final Map<String, HashTable> patterns = new ConcurrentHashMap<>();
+    // Derivations shipped in a compiled snapshot, keyed by "roots|patterns" canonical paths
+    private static final Map<String, DerivationMatrix> derivations = new ConcurrentHashMap<>();
+    // Weak-root rules of each patterns file, read from the rules.txt beside it
+    private static final Map<String, WeakRules> rules = new ConcurrentHashMap<>();
+
+    /**
+     * Loads both files from their compiled {@link LexiconSnapshot} when one
+     * exists and is up to date; otherwise does nothing and the text files
+     * are parsed on first use as usual.
+     */
+    public static void preload(String rootsPath, String patternsPath) {
+        String rootsKey = canonical(rootsPath);
+        String patternsKey = canonical(patternsPath);
+        if (roots.containsKey(rootsKey) && patterns.containsKey(patternsKey)) {
+            return;
+        }
+        LexiconSnapshot snapshot = LexiconSnapshot.open(rootsPath, patternsPath);
+        if (snapshot == null) {
+            return;
+        }
+        roots.putIfAbsent(rootsKey, snapshot.roots.freeze());
+        Map<String, Pattern> byName = new LinkedHashMap<>();
+        for (Pattern p : snapshot.patterns) {
+            byName.put(p.name, p);
+        }
+        HashTable table = patterns.computeIfAbsent(patternsKey, k -> HashTable.of(byName).freeze());
+        if (snapshot.derivations != null) {
+            // Columns follow the cached patterns, which may have been read from the text file first
+            derivations.put(rootsKey + "|" + patternsKey, snapshot.derivations.forPatterns(table.values()));
+        }
+    }
+
+    /**
+     * Derivations precomputed in the snapshot of these files, or null.
+     * Valid for any level built on them: columns are found by the ordinals
+     * of the cached patterns, so patterns edited since simply miss.
+     */
+    public static DerivationMatrix derivations(String rootsPath, String patternsPath) {
+        return derivations.get(canonical(rootsPath) + "|" + canonical(patternsPath));
+    }
+
+    /**
+     * Shared roots loaded from path, frozen; take a {@link RootStore#snapshot()}
+     * to edit. Empty, and not cached, if the file is missing or cannot be read.
+     */
+    public static RootStore roots(String path) {
+        RootStore store = roots.computeIfAbsent(canonical(path), k -> {
+            RootStore loaded = loadRoots(k);
+            return loaded != null ? loaded.freeze() : null;
+        });
+        return store != null ? store : NO_ROOTS;
+    }
+
+    /**
+     * Shared patterns loaded from path, frozen; take a {@link HashTable#copy()}
+     * to edit. Empty, and not cached, if the file is missing or cannot be read.
+     */
+    public static HashTable patterns(String path) {
+        HashTable table = patterns.computeIfAbsent(canonical(path), k -> {
+            HashTable loaded = loadPatterns(k);
+            return loaded != null ? loaded.freeze() : null;
+        });
+        return table != null ? table : NO_PATTERNS;
+    }
+
+    /**
+     * Weak-root rules for the patterns in path: the {@value WeakRules#FILE_NAME}
+     * in its directory, or {@link WeakRules#defaults()} as in the console if
+     * there is none there.
+     */
+    public static WeakRules rules(String patternsPath) {
+        return rules.computeIfAbsent(canonical(patternsPath), k -> {
+            File file = WeakRules.nextTo(k);
+            return file.isFile() ? WeakRules.load(file) : WeakRules.defaults();
+        });
+    }
+
+    /** File that {@link #rules} reads for the patterns in path. */
+    static File rulesFile(String patternsPath) {
+        File file = WeakRules.nextTo(patternsPath);
+        return file.isFile() ? file : WeakRules.defaultFile();
+    }
+
+    /**
+     * Drop the cached copy of a file so the next level using it reloads it.
+     * Levels already built keep what they have.
+     */
+    public static void evict(String path) {
+        String key = canonical(path);
+        roots.remove(key);
+        patterns.remove(key);
+        rules.remove(key);
+        derivations.keySet().removeIf(k -> k.startsWith(key + "|") || k.endsWith("|" + key));
+    }
+
+    static String canonical(String path) {
+        File file = new File(path);
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException e) {
+            return file.getAbsolutePath();
+        }
+    }
+
+    /** Roots read from path, or null if the file is missing or cannot be read. */
+    static RootStore loadRoots(String path) {
+        try {
+            File file = new File(path);
+            if (!file.exists()) {
+                System.err.println("⚠ Roots file not found: " + path);
+                System.err.println("  Create the file or add roots via Teacher Mode.");
+                return null;
+            }
+
+            List<RootData> data = new ArrayList<>();
+            for (String root : readRoots(file)) {
+                data.add(new RootData(root));
+            }
+            RootStore store = new RootStore();
+            store.loadAll(data);
+            System.out.println("✓ Loaded roots: " + path);
+            return store;
+        } catch (Exception e) {
+            System.err.println("✗ Error loading roots: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** Patterns read from path, or null if the file is missing or cannot be read. */
+    static HashTable loadPatterns(String path) {
+        Map<String, Pattern> byName = loadPatternMap(path);
+        return byName == null ? null : HashTable.of(byName);
+    }
+
+    /**
+     * Patterns read from path by name, in file order, or null if the file is
+     * missing or cannot be read.
+     */
+    static Map<String, Pattern> loadPatternMap(String path) {
+        try {
+            File file = new File(path);
+            if (!file.exists()) {
+                System.err.println("⚠ Patterns file not found: " + path);
+                System.err.println("  Create the file or add patterns via Teacher Mode.");
+                return null;
+            }
+
+            Map<String, Pattern> byName = new LinkedHashMap<>();
+            for (Map.Entry<String, List<String>> e : readPatterns(file)) {
+                byName.put(e.getKey(), new Pattern(e.getKey(), e.getValue(), rules(path)));
+            }
+            System.out.println("✓ Loaded patterns: " + path);
+            return byName;
+        } catch (Exception e) {
+            System.err.println("✗ Error loading patterns: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Non-empty lines of a roots file, trimmed, in file order. Marks are
+     * dropped but the hamza is kept: see {@link RootData#root}.
+     */
+    static List<String> readRoots(File file) throws IOException {
+        List<String> roots = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                String trimmed = line.trim();
+                if (!trimmed.isEmpty()) {
+                    roots.add(Normalizer.SPELLING.normalize(trimmed));
+                }
+            }
+        }
+        return roots;
+    }
+
+    /** (name, template) of every "name:template" line of a patterns file, in file order. */
+    static List<Map.Entry<String, List<String>>> readPatterns(File file) throws IOException {
+        List<Map.Entry<String, List<String>>> patterns = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                String trimmed = line.trim();
+                if (!trimmed.isEmpty() && trimmed.contains(":")) {
+                    String[] parts = trimmed.split(":", 2);
+                    if (parts.length >= 2) {
+                        String patternName = parts[0].trim();
+                        String templateStr = parts[1].trim();
+                        List<String> template = Arrays.asList(templateStr.split("\\s+"));
+                        patterns.add(Map.entry(patternName, template));
+                    }
+                }
+            }
+        }
+        return patterns;
+    }
+}
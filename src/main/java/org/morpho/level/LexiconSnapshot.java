@@ -0,0 +1,205 @@
+package org.morpho.level;
+
+import org.morpho.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Compiled binary form of a roots.txt / patterns.txt pair.
+ *
+ * The file sits next to roots.txt, named after the patterns file (see
+ * {@link #pathFor}), so every patterns file used over the same roots has
+ * its own. It holds, in order (big-endian, strings as an int length plus
+ * UTF-16 chars):
+ * <ul>
+ *   <li>magic, format version and a flag for derivations;</li>
+ *   <li>canonical path, size and modification time of both sources and
+ *       of the weak-root rules the patterns use (size -1 if absent);</li>
+ *   <li>the roots as a {@link RootStore} keeps them, see
+ *       {@link RootStore#writeTo}: the packed root codes in order, then
+ *       the few roots stored as strings;</li>
+ *   <li>the patterns: name and template cells of each;</li>
+ *   <li>optionally the full roots × patterns {@link DerivationMatrix}.</li>
+ * </ul>
+ * Loading maps the file and bulk-copies the codes into the store as they
+ * are: no root is parsed, normalized, sorted or turned into a String.
+ * Only the derivations need the roots as Strings, for their rows. The
+ * patterns are compiled again, which is cheap for a few thousand. A
+ * snapshot whose sources changed since it was compiled is ignored, and
+ * the caller falls back to the text files.
+ */
+public class LexiconSnapshot {
+    private static final String PREFIX = "lexicon-";
+    private static final String SUFFIX = ".snap";
+
+    private static final int MAGIC = 0x4D4C5853; // "MLXS"
+    private static final int VERSION = 3;
+
+    /** The roots, ready to share; never edited. */
+    public final RootStore roots;
+    /** In patterns.txt order. */
+    public final List<Pattern> patterns;
+    /** Every derivation, or null if the snapshot was compiled without them. */
+    public final DerivationMatrix derivations;
+
+    private LexiconSnapshot(RootStore roots, List<Pattern> patterns, DerivationMatrix derivations) {
+        this.roots = roots;
+        this.patterns = patterns;
+        this.derivations = derivations;
+    }
+
+    /**
+     * Where the snapshot of a roots file with a patterns file lives: next to
+     * the roots, as lexicon-&lt;patterns file name&gt;-&lt;hash of its
+     * canonical path&gt;.snap, e.g. lexicon-patterns-1a2b3c4d.snap.
+     */
+    public static Path pathFor(String rootsPath, String patternsPath) {
+        Path roots = Paths.get(LexiconRegistry.canonical(rootsPath));
+        String patterns = LexiconRegistry.canonical(patternsPath);
+        String stem = Paths.get(patterns).getFileName().toString().replaceFirst("\\.txt$", "");
+        String name = PREFIX + stem + "-" + String.format("%08x", patterns.hashCode()) + SUFFIX;
+        Path dir = roots.getParent();
+        return dir == null ? Paths.get(name) : dir.resolve(name);
+    }
+
+    /**
+     * Loads the snapshot compiled from these two files.
+     * Returns null if there is none, it was compiled from other files,
+     * either file changed since, or it cannot be read.
+     */
+    public static LexiconSnapshot open(String rootsPath, String patternsPath) {
+        Path path = pathFor(rootsPath, patternsPath);
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                return null;
+            }
+            boolean hasDerivations = in.getInt() != 0;
+            if (!matches(in, rootsPath) || !matches(in, patternsPath)
+                    || !matches(in, LexiconRegistry.rulesFile(patternsPath).getPath())) {
+                System.err.println("⚠ Snapshot out of date, reading text files: " + path);
+                return null;
+            }
+
+            RootStore roots = RootStore.readFrom(in);
+
+            int patternCount = in.getInt();
+            List<Pattern> patterns = new ArrayList<>(patternCount);
+            for (int i = 0; i < patternCount; i++) {
+                String name = readString(in);
+                String[] template = new String[in.getInt()];
+                for (int k = 0; k < template.length; k++) {
+                    template[k] = readString(in);
+                }
+                patterns.add(new Pattern(name, Arrays.asList(template), LexiconRegistry.rules(patternsPath)));
+            }
+
+            DerivationMatrix derivations = hasDerivations
+                    ? DerivationMatrix.readFrom(in, roots.list().toArray(new String[0]), patterns.toArray(new Pattern[0]))
+                    : null;
+            System.out.println("✓ Loaded snapshot: " + path);
+            return new LexiconSnapshot(roots, patterns, derivations);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("✗ Error loading snapshot, reading text files: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Parses the two text files and writes their snapshot, see {@link #pathFor}.
+     * @param withDerivations Also store every roots × patterns word
+     * @return The snapshot file
+     */
+    public static Path compile(String rootsPath, String patternsPath, boolean withDerivations) throws IOException {
+        RootStore roots = LexiconRegistry.loadRoots(rootsPath);
+        Map<String, Pattern> byName = LexiconRegistry.loadPatternMap(patternsPath);
+        if (roots == null || byName == null) {
+            throw new IOException("Cannot read " + (roots == null ? rootsPath : patternsPath));
+        }
+        List<Pattern> patterns = new ArrayList<>(byName.values());
+
+        Path path = pathFor(rootsPath, patternsPath);
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(withDerivations ? 1 : 0);
+            writeSource(out, rootsPath);
+            writeSource(out, patternsPath);
+            writeSource(out, LexiconRegistry.rulesFile(patternsPath).getPath());
+
+            roots.writeTo(out);
+
+            out.writeInt(patterns.size());
+            for (Pattern p : patterns) {
+                writeString(out, p.name);
+                out.writeInt(p.template.size());
+                for (String cell : p.template) {
+                    writeString(out, cell);
+                }
+            }
+
+            if (withDerivations) {
+                DerivationMatrix.build(roots.list(), patterns).writeTo(out);
+            }
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        System.out.println("✓ Compiled snapshot: " + path + " (" + roots.size() + " roots, "
+                + patterns.size() + " patterns" + (withDerivations ? ", with derivations)" : ")"));
+        return path;
+    }
+
+    private static void writeSource(DataOutputStream out, String sourcePath) throws IOException {
+        File file = new File(sourcePath);
+        writeString(out, LexiconRegistry.canonical(sourcePath));
+        out.writeLong(file.isFile() ? file.length() : -1);
+        out.writeLong(file.lastModified());
+    }
+
+    /** Reads one source entry and checks it still describes sourcePath. */
+    private static boolean matches(ByteBuffer in, String sourcePath) {
+        File file = new File(sourcePath);
+        String canonical = readString(in);
+        long size = in.getLong();
+        long modified = in.getLong();
+        return canonical.equals(LexiconRegistry.canonical(sourcePath))
+                && size == (file.isFile() ? file.length() : -1) && modified == file.lastModified();
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        out.writeInt(s.length());
+        out.writeChars(s);
+    }
+
+    private static String readString(ByteBuffer in) {
+        char[] chars = new char[in.getInt()];
+        readChars(in, chars);
+        return new String(chars);
+    }
+
+    private static void readChars(ByteBuffer in, char[] out) {
+        in.asCharBuffer().get(out);
+        in.position(in.position() + out.length * Character.BYTES);
+    }
+
+    /**
+     * Usage: LexiconSnapshot [--derivations] [roots.txt patterns.txt]
+     */
+    public static void main(String[] args) throws IOException {
+        List<String> rest = new ArrayList<>(Arrays.asList(args));
+        boolean withDerivations = rest.remove("--derivations");
+        if (rest.size() != 0 && rest.size() != 2) {
+            System.out.println("Usage: LexiconSnapshot [--derivations] [roots.txt patterns.txt]");
+            return;
+        }
+        String roots = rest.isEmpty() ? "src/main/data/roots.txt" : rest.get(0);
+        String patterns = rest.isEmpty() ? "src/main/data/patterns.txt" : rest.get(1);
+        compile(roots, patterns, withDerivations);
+    }
+}
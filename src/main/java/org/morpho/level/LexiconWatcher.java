@@ -0,0 +1,265 @@
+package org.morpho.level;
+
+import org.morpho.*;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Reloads levels when their roots.txt, patterns.txt or rules.txt changes on disk.
+ *
+ * A daemon thread waits on a {@link WatchService} for the directories of
+ * the watched files. When one changes it is parsed again and compared
+ * with the version seen last: only the roots and patterns that were added,
+ * removed or (for patterns) given a new template are applied, through
+ * {@link Level#applyDelta}, to every level built on that file. Each level
+ * switches to the new content of a file in one step, so sessions keep
+ * running on a consistent view, and only the cached words of replaced
+ * patterns and removed roots are dropped from the {@link DerivationCache},
+ * in one pass over it per reload.
+ *
+ * A file that is missing when it is read again, as while an editor saves
+ * by deleting and renaming, is skipped: levels keep what they have, and
+ * the file is compared with that when it is back.
+ *
+ * The weak-root rules each patterns file uses, see
+ * {@link LexiconRegistry#rules}, are watched too, as is the rules.txt that
+ * would take over beside it. When they change, every pattern of the levels
+ * using them is compiled again with the new rules, keeping its template.
+ *
+ * Edits a teacher made in memory are kept; the file delta is applied on top.
+ */
+public class LexiconWatcher implements Closeable {
+    // Editors often save in several writes; wait for them to settle
+    private static final long SETTLE_MILLIS = 200;
+
+    private final WatchService watchService;
+    private final Map<Path, WatchKey> directories = new HashMap<>();
+    // Per watched file: the levels using it and its last seen content
+    private final Map<Path, List<Level>> rootLevels = new HashMap<>();
+    private final Map<Path, List<Level>> patternLevels = new HashMap<>();
+    private final Map<Path, Set<String>> lastRoots = new HashMap<>();
+    private final Map<Path, Map<String, List<String>>> lastPatterns = new HashMap<>();
+    // Per rules file: the patterns files whose rules it gives, or would give once created
+    private final Map<Path, Set<Path>> rulesUsers = new HashMap<>();
+    private final Thread thread;
+
+    public LexiconWatcher() throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.thread = new Thread(this::run, "lexicon-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Start reloading level from its source files. The first level of a
+     * file sets the baseline: the content it was loaded with, so a change
+     * saved between loading it and this call is still picked up.
+     */
+    public synchronized void watch(Level level) throws IOException {
+        Path roots = Paths.get(LexiconRegistry.canonical(level.getRootsPath()));
+        Path patterns = Paths.get(LexiconRegistry.canonical(level.getPatternsPath()));
+
+        if (!lastRoots.containsKey(roots)) {
+            lastRoots.put(roots, new HashSet<>(level.getLoadedRoots().list()));
+        }
+        if (!lastPatterns.containsKey(patterns)) {
+            Map<String, List<String>> loaded = new LinkedHashMap<>();
+            for (Pattern p : level.getLoadedPatterns()) {
+                loaded.put(p.name, p.template);
+            }
+            lastPatterns.put(patterns, loaded);
+        }
+        rootLevels.computeIfAbsent(roots, k -> new ArrayList<>()).add(level);
+        patternLevels.computeIfAbsent(patterns, k -> new ArrayList<>()).add(level);
+        register(roots.getParent());
+        register(patterns.getParent());
+
+        String patternsPath = level.getPatternsPath();
+        Path rules = Paths.get(LexiconRegistry.canonical(LexiconRegistry.rulesFile(patternsPath).getPath()));
+        Path beside = Paths.get(LexiconRegistry.canonical(WeakRules.nextTo(patternsPath).getPath()));
+        for (Path file : List.of(rules, beside)) {
+            rulesUsers.computeIfAbsent(file, k -> new HashSet<>()).add(patterns);
+            if (Files.isDirectory(file.getParent())) {
+                register(file.getParent());
+            }
+        }
+    }
+
+    /** Stop reloading level. */
+    public synchronized void unwatch(Level level) {
+        for (List<Level> levels : rootLevels.values()) {
+            levels.remove(level);
+        }
+        for (List<Level> levels : patternLevels.values()) {
+            levels.remove(level);
+        }
+    }
+
+    private void register(Path dir) throws IOException {
+        if (dir != null && !directories.containsKey(dir)) {
+            directories.put(dir, dir.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        thread.interrupt();
+        watchService.close();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Set<Path> changed = new HashSet<>();
+                collect(key, changed);
+                Thread.sleep(SETTLE_MILLIS);
+                while ((key = watchService.poll()) != null) {
+                    collect(key, changed);
+                }
+                for (Path file : changed) {
+                    reload(file);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        }
+    }
+
+    private static void collect(WatchKey key, Set<Path> changed) {
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.context() instanceof Path) {
+                changed.add(dir.resolve((Path) event.context()));
+            }
+        }
+        key.reset();
+    }
+
+    private synchronized void reload(Path file) {
+        try {
+            if (lastRoots.containsKey(file)) {
+                reloadRoots(file);
+            }
+            if (lastPatterns.containsKey(file)) {
+                reloadPatterns(file);
+            }
+            if (rulesUsers.containsKey(file)) {
+                reloadRules(file);
+            }
+        } catch (IOException e) {
+            System.err.println("✗ Error reloading " + file + ": " + e.getMessage());
+        }
+    }
+
+    private void reloadRoots(Path file) throws IOException {
+        Set<String> now = readRoots(file);
+        if (now == null) {
+            warnMissing(file);
+            return;
+        }
+        Set<String> before = lastRoots.get(file);
+        List<String> added = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        for (String root : now) {
+            if (!before.contains(root)) {
+                added.add(root);
+            }
+        }
+        for (String root : before) {
+            if (!now.contains(root)) {
+                removed.add(root);
+            }
+        }
+        lastRoots.put(file, now);
+        if (added.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+
+        LexiconRegistry.evict(file.toString());
+        for (Level level : rootLevels.getOrDefault(file, Collections.emptyList())) {
+            level.applyDelta(added, removed, Collections.emptyMap(), Collections.emptyList());
+        }
+        DerivationCache.shared().invalidateRoots(removed);
+        System.out.println("✓ Reloaded roots: " + file + " (+" + added.size() + " -" + removed.size() + ")");
+    }
+
+    private void reloadPatterns(Path file) throws IOException {
+        Map<String, List<String>> now = readPatterns(file);
+        if (now == null) {
+            warnMissing(file);
+            return;
+        }
+        Map<String, List<String>> before = lastPatterns.get(file);
+        Map<String, List<String>> upserts = new LinkedHashMap<>();
+        List<String> removed = new ArrayList<>();
+        for (Map.Entry<String, List<String>> e : now.entrySet()) {
+            if (!e.getValue().equals(before.get(e.getKey()))) {
+                upserts.put(e.getKey(), e.getValue());
+            }
+        }
+        for (String name : before.keySet()) {
+            if (!now.containsKey(name)) {
+                removed.add(name);
+            }
+        }
+        lastPatterns.put(file, now);
+        if (upserts.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+
+        LexiconRegistry.evict(file.toString());
+        List<Pattern> retired = new ArrayList<>();
+        for (Level level : patternLevels.getOrDefault(file, Collections.emptyList())) {
+            retired.addAll(level.applyDelta(Collections.emptyList(), Collections.emptyList(), upserts, removed));
+        }
+        DerivationCache.shared().invalidatePatterns(retired);
+        System.out.println("✓ Reloaded patterns: " + file + " (" + upserts.size() + " added or changed, "
+                + removed.size() + " removed)");
+    }
+
+    /** Compiles every pattern of the levels using file's rules again, once the registry forgot the old rules. */
+    private void reloadRules(Path file) {
+        List<Pattern> retired = new ArrayList<>();
+        for (Path patterns : rulesUsers.get(file)) {
+            LexiconRegistry.evict(patterns.toString());
+            for (Level level : patternLevels.getOrDefault(patterns, Collections.emptyList())) {
+                Map<String, List<String>> all = new LinkedHashMap<>();
+                for (Pattern p : level.getAllPatterns()) {
+                    all.put(p.name, p.template);
+                }
+                retired.addAll(level.applyDelta(Collections.emptyList(), Collections.emptyList(), all,
+                        Collections.emptyList()));
+            }
+        }
+        DerivationCache.shared().invalidatePatterns(retired);
+        System.out.println("✓ Reloaded rules: " + file + " (" + retired.size() + " patterns compiled again)");
+    }
+
+    private static void warnMissing(Path file) {
+        System.err.println("⚠ " + file + " is missing; levels keep their content until it is back");
+    }
+
+    /** Roots of file, or null if it is missing. */
+    private static Set<String> readRoots(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        return new HashSet<>(LexiconRegistry.readRoots(file.toFile()));
+    }
+
+    /** Templates of file by name, or null if it is missing. */
+    private static Map<String, List<String>> readPatterns(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        Map<String, List<String>> patterns = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> e : LexiconRegistry.readPatterns(file.toFile())) {
+            patterns.put(e.getKey(), e.getValue());
+        }
+        return patterns;
+    }
+}
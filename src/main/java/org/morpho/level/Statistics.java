@@ -10,6 +10,8 @@ public class Statistics {
     private int totalQuestions;
     private int correctAnswers;
     private int wrongAnswers;
+    // Wrong answers that fit no pattern, so are in no pattern's mistakes
+    private int unmatchedAnswers;
     private Map<String, Integer> patternMistakes;
     private Map<String, Integer> patternSuccesses;
 
@@ -35,6 +37,13 @@ public class Statistics {
         }
     }
 
+    /** Records a wrong answer that derives from no pattern; it counts against none of them. */
+    public void recordUnmatched() {
+        totalQuestions++;
+        wrongAnswers++;
+        unmatchedAnswers++;
+    }
+
     public double getAccuracy() {
         if (totalQuestions == 0) return 0.0;
         return (double) correctAnswers / totalQuestions * 100.0;
@@ -62,6 +71,7 @@ public class Statistics {
         totalQuestions = 0;
         correctAnswers = 0;
         wrongAnswers = 0;
+        unmatchedAnswers = 0;
         patternMistakes.clear();
         patternSuccesses.clear();
     }
@@ -79,6 +89,10 @@ public class Statistics {
         return wrongAnswers;
     }
 
+    public int getUnmatchedAnswers() {
+        return unmatchedAnswers;
+    }
+
     public Map<String, Integer> getPatternMistakes() {
         return new HashMap<>(patternMistakes);
     }
@@ -123,7 +123,7 @@ public class ManagePatternsFrame extends JFrame {
                     
                     JCheckBox checkbox = new JCheckBox(pattern.name);
                     checkbox.setFont(new Font("Arial", Font.PLAIN, 14));
-                    checkbox.setSelected(currentLevel.isPatternEnabled(pattern.name));
+                    checkbox.setSelected(currentLevel.isPatternEnabled(pattern));
                     
                     checkbox.addActionListener(e -> {
                         if (checkbox.isSelected()) {
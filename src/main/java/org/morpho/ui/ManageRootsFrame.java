@@ -204,14 +204,15 @@ public class ManageRootsFrame extends JFrame {
         if (rootData != null) {
             StringBuilder details = new StringBuilder();
             details.append("Root: ").append(rootData.root).append("\n\n");
-            details.append("Generated Derivatives:\n");
+            details.append("Derivatives (enabled patterns):\n");
             
-            if (rootData.derivatives.isEmpty()) {
-                details.append("  (No derivatives generated yet)\n");
+            List<org.morpho.Pattern> patterns = currentLevel.getEnabledPatterns(rootData.root.length());
+            if (patterns.isEmpty()) {
+                details.append("  (No enabled pattern fits this root)\n");
             } else {
-                for (String patternName : rootData.derivatives.keySet()) {
-                    String word = rootData.derivatives.get(patternName);
-                    details.append("  ").append(patternName).append(" → ").append(word).append("\n");
+                for (org.morpho.Pattern pattern : patterns) {
+                    String word = currentLevel.generateWord(rootData.root, pattern.name);
+                    details.append("  ").append(pattern.name).append(" → ").append(word).append("\n");
                 }
             }
 
@@ -6,7 +6,6 @@ import javax.swing.*;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 import java.awt.*;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -208,14 +207,7 @@ public class PracticeGenerationFrame extends JFrame {
     }
 
     private List<Pattern> getEnabledPatternsForLength(int length) {
-        List<Pattern> filtered = new ArrayList<>();
-        for (Pattern p : level.getEnabledPatterns()) {
-            int size = p.verifyPattern(p);
-            if (size == length) {
-                filtered.add(p);
-            }
-        }
-        return filtered;
+        return level.getEnabledPatterns(length);
     }
 
     private void updatePatternComboForRoot() {
@@ -234,11 +226,7 @@ public class PracticeGenerationFrame extends JFrame {
             return;
         }
 
-        for (Pattern p : level.getEnabledPatterns()) {
-            int size = p.verifyPattern(p);
-            if (size != length) {
-                continue;
-            }
+        for (Pattern p : level.getEnabledPatterns(length)) {
             patternCombo.addItem(p.name);
         }
 
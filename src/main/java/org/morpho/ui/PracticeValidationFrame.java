@@ -176,13 +176,6 @@ public class PracticeValidationFrame extends JFrame {
     }
 
     private List<org.morpho.Pattern> getEnabledPatternsForLength(int length) {
-        List<org.morpho.Pattern> filtered = new java.util.ArrayList<>();
-        for (org.morpho.Pattern p : level.getEnabledPatterns()) {
-            int size = p.verifyPattern(p);
-            if (size == length) {
-                filtered.add(p);
-            }
-        }
-        return filtered;
+        return level.getEnabledPatterns(length);
     }
 }
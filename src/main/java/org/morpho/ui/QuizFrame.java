@@ -271,13 +271,6 @@ public class QuizFrame extends JFrame {
     }
 
     private List<Pattern> getEnabledPatternsForLength(int length) {
-        List<Pattern> filtered = new ArrayList<>();
-        for (Pattern p : level.getEnabledPatterns()) {
-            int size = p.verifyPattern(p);
-            if (size == length) {
-                filtered.add(p);
-            }
-        }
-        return filtered;
+        return level.getEnabledPatterns(length);
     }
 }
\ No newline at end of file